@@ -4,22 +4,62 @@ import java.util.*;
 
 public final class Analyser {
 
-    Tokenizer tokenizer;
+    TokenBuffer tokens;
     Table table;
     int deep = 1;
-
-    /** 当前偷看的 token */
-    Token peekedToken = null;
+    // 当前顶层声明或函数的语法树，分析完一个就交给 lowering 生成指令
+    Ast ast = new Ast();
+    Lowering lowering = new Lowering(ast);
+    // 建表达式节点时做常量折叠，为 null 时原样建树，见 setFolding
+    Folding folding;
 
     /** 符号表 */
     // HashMap<String, SymbolEntry> symbolTable = new HashMap<>();
 
-    /** 下一个变量的栈偏移 */
-    int nextOffset = 0;
+    // 按源码顺序第 k 个 fn 是否需要编译，为 null 时全部编译，见 Reachability
+    boolean[] reachable;
+    int functionCount = 0;
+
+    // 单独编译一个函数体时，函数体里各个字符串字面量预先登记好的全局编号，顺序编译时为 null
+    int[] strings;
+    int nextString = 0;
+
+    /**
+     * 第一遍跳过的一个函数体
+     */
+    public static class Body {
+        // 函数在 functionTables 里的下标
+        final int function;
+        // 签名分析完时全局符号的个数
+        final int symbols;
+        // 函数体 '{' 的 token 下标
+        final int start;
+        // 函数体里的字符串字面量按顺序登记的全局编号
+        final int[] strings;
+
+        Body(int function, int symbols, int start, int[] strings) {
+            this.function = function;
+            this.symbols = symbols;
+            this.start = start;
+            this.strings = strings;
+        }
+    }
 
     public Analyser(Tokenizer tokenizer) throws AnalyzeError {
-        this.tokenizer = tokenizer;
-        this.table = new Table();
+        this(new TokenBuffer(tokenizer));
+    }
+
+    public Analyser(TokenBuffer tokens) throws AnalyzeError {
+        this.tokens = tokens;
+        this.table = new Table(tokens.getPool());
+    }
+
+    /**
+     * @param table 已经分析过签名的表 fork() 出来的表，用来单独编译一个函数体
+     */
+    public Analyser(TokenBuffer tokens, Table table) {
+        this.tokens = tokens;
+        this.table = table;
     }
 
     public Table analyse() throws CompileError {
@@ -27,33 +67,127 @@ public final class Analyser {
         return table;
     }
 
+    public Table getTable() {
+        return table;
+    }
+
+    /**
+     * 只编译 reachable 里标记的函数，其余的 fn 连同签名整个跳过，不进入任何表
+     */
+    public void setReachable(boolean[] reachable) {
+        this.reachable = reachable;
+    }
+
+    /**
+     * 是否在建树时折叠常量、化简表达式
+     * 打开时初始值折叠成常量的 const 会记下它的值，读它的地方直接写成 push，局部的 const 也不再占位置
+     */
+    public void setFolding(boolean folding) {
+        this.folding = folding ? new Folding(ast) : null;
+    }
+
+    /**
+     * 下一个 fn 是否要跳过，不要时把它整个跳过
+     */
+    private boolean skipUnreachableFunction() throws CompileError {
+        if (reachable == null || reachable[functionCount++])
+            return false;
+        expect(TokenType.FN_KW);
+        while(!check(TokenType.L_BRACE) && !check(TokenType.EOF))
+            next();
+        int depth = 0;
+        do {
+            TokenType ty = tokens.type(next());
+            if(ty == TokenType.L_BRACE)
+                depth++;
+            else if(ty == TokenType.R_BRACE)
+                depth--;
+            else if(ty == TokenType.EOF)
+                break;
+        } while(depth > 0);
+        return true;
+    }
+
+    /**
+     * 第一遍：全局声明照常分析，函数只分析签名，函数体按花括号配对跳过。
+     * 跳过时把函数体里的字符串字面量按顺序登记进全局表，
+     * 这样全局表里各项的顺序和编号都和顺序编译时一样
+     *
+     * @return 所有函数体，按源码顺序
+     */
+    public List<Body> analyseSignatures() throws CompileError {
+        List<Body> bodies = new ArrayList<>();
+        while(!check(TokenType.EOF)){
+            while(check(TokenType.LET_KW)||check(TokenType.CONST_KW)){
+                analyseGlobalDeclStmt();
+            }
+            while(check(TokenType.FN_KW)){
+                if(skipUnreachableFunction())
+                    continue;
+                analyseFunctionSignature();
+                bodies.add(skipFunctionBody());
+            }
+        }
+        expect(TokenType.EOF);
+        return bodies;
+    }
+
+    private Body skipFunctionBody() throws CompileError {
+        int function = this.table.getFunctionTables().size() - 1;
+        int symbols = this.table.getSymbolCount();
+        int start = expect(TokenType.L_BRACE);
+        int[] found = new int[8];
+        int count = 0;
+        int depth = 1;
+        while(depth > 0){
+            int token = next();
+            switch (tokens.type(token)) {
+                case L_BRACE:
+                    depth++;
+                    break;
+                case R_BRACE:
+                    depth--;
+                    break;
+                case STRING_LITERAL:
+                    if(count == found.length)
+                        found = Arrays.copyOf(found, count * 2);
+                    found[count++] = addString(token);
+                    break;
+                case EOF:
+                    throw new ExpectedTokenError(TokenType.R_BRACE, tokens.token(token));
+                default:
+                    break;
+            }
+        }
+        return new Body(function, symbols, start, Arrays.copyOf(found, count));
+    }
+
+    /**
+     * 编译第一遍跳过的函数体，tokens 的游标要停在 body.start 上
+     */
+    public void analyseBody(Body body) throws CompileError {
+        this.strings = body.strings;
+        analyseFunctionBody();
+    }
+
     /**
-     * 查看下一个 Token
+     * 查看下一个 Token 的类型
      * 
      * @return
      * @throws TokenizeError
      */
-    private Token peek() throws TokenizeError {
-        if (peekedToken == null) {
-            peekedToken = tokenizer.nextToken();
-        }
-        return peekedToken;
+    private TokenType peek() throws TokenizeError {
+        return tokens.peekType();
     }
 
     /**
      * 获取下一个 Token
      * 
-     * @return
+     * @return 这个 token 在 token 流里的下标
      * @throws TokenizeError
      */
-    private Token next() throws TokenizeError {
-        if (peekedToken != null) {
-            Token token = peekedToken;
-            peekedToken = null;
-            return token;
-        } else {
-            return tokenizer.nextToken();
-        }
+    private int next() throws TokenizeError {
+        return tokens.next();
     }
 
     /**
@@ -64,23 +198,22 @@ public final class Analyser {
      * @throws TokenizeError
      */
     private boolean check(TokenType tt) throws TokenizeError {
-        Token token = peek();
-        return token.getTokenType() == tt;
+        return tokens.peekType() == tt;
     }
 
     /**
-     * 如果下一个 token 的类型是 tt，则前进一个 token 并返回这个 token
+     * 如果下一个 token 的类型是 tt，则前进一个 token 并返回 true
      * 
      * @param tt 类型
-     * @return 如果匹配则返回这个 token，否则返回 null
+     * @return 是否匹配
      * @throws TokenizeError
      */
-    private Token nextIf(TokenType tt) throws TokenizeError {
-        Token token = peek();
-        if (token.getTokenType() == tt) {
-            return next();
+    private boolean nextIf(TokenType tt) throws TokenizeError {
+        if (check(tt)) {
+            next();
+            return true;
         } else {
-            return null;
+            return false;
         }
     }
 
@@ -95,183 +228,157 @@ public final class Analyser {
      * 如果下一个 token 的类型是 tt，则前进一个 token 并返回，否则抛出异常
      * 
      * @param tt 类型
-     * @return 这个 token
+     * @return 这个 token 的下标
      * @throws CompileError 如果类型不匹配
      */
-    private Token expect(TokenType tt) throws CompileError {
-        Token token = peek();
-        if (token.getTokenType() == tt) {
+    private int expect(TokenType tt) throws CompileError {
+        if (check(tt)) {
             return next();
         } else {
-            throw new ExpectedTokenError(tt, token);
+            throw new ExpectedTokenError(tt, tokens.token(tokens.peekIndex()));
         }
     }
 
-    private Token expectTy() throws CompileError {
-        Token token = peek();
-        TokenType tokentype=token.getTokenType();
+    private int expectTy() throws CompileError {
+        TokenType tokentype=peek();
         if ( tokentype== TokenType.INT_KW) {
             return next();
         } else {
-            throw new ExpectedTokenError(getList(TokenType.INT_KW), next());
+            throw new ExpectedTokenError(getList(TokenType.INT_KW), tokens.token(next()));
         }
     }
 
-    private Token expectReturnTy() throws CompileError {
-        Token token = peek();
-        TokenType tokentype=token.getTokenType();
+    private int expectReturnTy() throws CompileError {
+        TokenType tokentype=peek();
         if ( tokentype== TokenType.INT_KW||tokentype== TokenType.VOID_KW) {
             return next();
         } else {
-            throw new ExpectedTokenError(getList(TokenType.INT_KW, TokenType.VOID_KW), next());
+            throw new ExpectedTokenError(getList(TokenType.INT_KW, TokenType.VOID_KW), tokens.token(next()));
         }
     }
-    private Token expectLiteral() throws CompileError {
-        Token token = peek();
-        TokenType tokentype=token.getTokenType();
+    private int expectLiteral() throws CompileError {
+        TokenType tokentype=peek();
         if ( tokentype== TokenType.UINT_LITERAL||tokentype== TokenType.STRING_LITERAL) {
             return next();
         } else {
-            throw new ExpectedTokenError(getList(TokenType.UINT_LITERAL, TokenType.STRING_LITERAL), next());
+            throw new ExpectedTokenError(getList(TokenType.UINT_LITERAL, TokenType.STRING_LITERAL), tokens.token(next()));
         }
     }
 
-    private void expectNotConstant(Token token) throws AnalyzeError {
-        String name=token.getValueString();
-        Pos curPos=token.getStartPos();
-        SymbolEntry entry = this.table.get(name,this.deep,curPos);
-        if (entry == null) {
-            throw new AnalyzeError(ErrorCode.NotDeclared, curPos);
-        } else if(entry.isConstant()) {
-            throw new AnalyzeError(ErrorCode.AssignToConstant, curPos);
+    private void expectNotConstant(int entry, int token) throws AnalyzeError {
+        if (entry < 0) {
+            throw new AnalyzeError(ErrorCode.NotDeclared, tokens.getSource(), tokens.start(token));
+        } else if(this.table.isConstant(entry)) {
+            throw new AnalyzeError(ErrorCode.AssignToConstant, tokens.getSource(), tokens.start(token));
         }
     }
 
     /**
-     * 获取下一个变量的栈偏移
-     * 
-     * @return
+     * @return 变量地址，编码见 Ast.address()
+     */
+    private int getVarOrParamAddress(int token) throws AnalyzeError {
+        int symbol=this.table.get(tokens.name(token),this.deep);
+        if(symbol<0)
+            throw new AnalyzeError(ErrorCode.NotDeclared, tokens.getSource(), tokens.start(token));
+        return getVarOrParamAddress(symbol, token);
+    }
+
+    /**
+     * 已经查到符号时直接用它的位置算地址，不再查表
      */
-    private int getNextVariableOffset() {
-        return this.nextOffset++;
-    }
-
-    private Instruction getVarOrParamAddress(String value, Pos curPos) throws AnalyzeError {
-        SymbolEntry symbolEntry=this.table.get(value,this.deep,curPos);
-        if(symbolEntry==null)
-            throw new AnalyzeError(ErrorCode.NotDeclared, curPos);
-        Long off=symbolEntry.getOff();
-        if(symbolEntry.getNameType()==NameType.Proc)
-            throw new AnalyzeError(ErrorCode.CantGetProcAddress, curPos);
-        else if(symbolEntry.getNameType()==NameType.Params){
-            return new Instruction(Operation.arga,off);
-        }else if(symbolEntry.getNameType()==NameType.Var) {
-            if(symbolEntry.getDeep()==1)
-                return new Instruction(Operation.globa,off);
+    private int getVarOrParamAddress(int symbol, int token) throws AnalyzeError {
+        if(this.table.getNameType(symbol)==NameType.Proc)
+            throw new AnalyzeError(ErrorCode.CantGetProcAddress, tokens.getSource(), tokens.start(token));
+        else if(this.table.getNameType(symbol)==NameType.Params){
+            // 有返回值时 arga 0 是返回值，参数从 1 开始
+            return Ast.address(Operation.arga,this.table.getSlot(symbol)+this.table.getNowFuncTable().getReturnSoltNum());
+        }else if(this.table.getNameType(symbol)==NameType.Var) {
+            if(this.table.getDeep(symbol)==1)
+                return Ast.address(Operation.globa,this.table.getSlot(symbol));
             else
-                return new Instruction(Operation.loca,off);
+                return Ast.address(Operation.loca,this.table.getSlot(symbol));
         }else
-            throw new AnalyzeError(ErrorCode.ExpectNameToken, curPos);
+            throw new AnalyzeError(ErrorCode.ExpectNameToken, tokens.getSource(), tokens.start(token));
     }
 
-    private Instruction getStringAddress(Token token) throws AnalyzeError {
-        this.table.addGlobal(token,true,NameType.String,null);
-        return new Instruction(Operation.push,(long)this.table.getGlobalId(token));
+    private int getStringAddress(int token) throws AnalyzeError {
+        this.table.addGlobal(tokens.name(token),TokenType.STRING_LITERAL,true,NameType.String,null);
+        return this.table.getGlobalId(tokens.name(token),TokenType.STRING_LITERAL);
     }
 
     /**
      * 添加一个符号
      * 
-     * @param name          名字
+     * @param token         名字所在的 token
      * @param isInitialized 是否已赋值
      * @param isConstant    是否是常量
-     * @param curPos        当前 token 的位置（报错用）
      * @throws AnalyzeError 如果重复定义了则抛异常
      */
-    private void addSymbol(Token token,NameType nameType,TokenType tokenType,int deep,boolean isInitialized, boolean isConstant, Pos curPos) throws AnalyzeError {
-        String name=token.getValueString();
-        SymbolEntry entry = this.table.get(name,deep,token.getStartPos());
-        if (entry != null && entry.getDeep() == deep) {
-            throw new AnalyzeError(ErrorCode.DuplicateDeclaration, curPos);
+    private int addSymbol(int token,NameType nameType,TokenType tokenType,int deep,boolean isInitialized, boolean isConstant) throws AnalyzeError {
+        int name=tokens.name(token);
+        int entry = this.table.get(name,deep);
+        if (entry >= 0 && this.table.getDeep(entry) == deep) {
+            throw new AnalyzeError(ErrorCode.DuplicateDeclaration, tokens.getSource(), tokens.start(token));
         }
         else{
-            this.table.put(new SymbolEntry(name,nameType,tokenType,deep,isConstant, isInitialized, getNextVariableOffset()),deep,token);
+            // 全局符号同时成为全局表里的一项，类型就是名字所在 token 的类型
+            return this.table.put(name,nameType,tokenType,deep,isConstant,isInitialized,tokens.type(token));
         }
     }
 
     /**
      * 设置符号为已赋值
      * 
-     * @param name   符号名称
-     * @param curPos 当前位置（报错用） startPos
+     * @param token  符号所在的 token
      * @throws AnalyzeError 如果未定义则抛异常
      */
-    private void initializeSymbol(String name, Pos curPos) throws AnalyzeError {
-        SymbolEntry entry = this.table.get(name,this.deep,curPos);
-        if (entry == null) {
-            throw new AnalyzeError(ErrorCode.NotDeclared, curPos);
+    private void initializeSymbol(int token) throws AnalyzeError {
+        int entry = this.table.get(tokens.name(token),this.deep);
+        if (entry < 0) {
+            throw new AnalyzeError(ErrorCode.NotDeclared, tokens.getSource(), tokens.start(token));
         } else {
-            entry.setInitialized(true);
+            this.table.setInitialized(entry);
         }
     }
 
-    private void declareSymbol(String name, Pos curPos) throws AnalyzeError {
-        SymbolEntry entry = this.table.get(name,this.deep,curPos);
-        if (entry == null) {
-            throw new AnalyzeError(ErrorCode.NotDeclared, curPos);
-        }else if(entry.getNameType()==NameType.Proc){
-            throw new AnalyzeError(ErrorCode.AssignedToFunction, curPos);
-        }else if(entry.isConstant()){
-            throw new AnalyzeError(ErrorCode.AssignToConstant, curPos);
+    private void declareSymbol(int token) throws AnalyzeError {
+        int entry = this.table.get(tokens.name(token),this.deep);
+        if (entry < 0) {
+            throw new AnalyzeError(ErrorCode.NotDeclared, tokens.getSource(), tokens.start(token));
+        }else if(this.table.getNameType(entry)==NameType.Proc){
+            throw new AnalyzeError(ErrorCode.AssignedToFunction, tokens.getSource(), tokens.start(token));
+        }else if(this.table.isConstant(entry)){
+            throw new AnalyzeError(ErrorCode.AssignToConstant, tokens.getSource(), tokens.start(token));
         }
         else {
-            entry.setInitialized(true);
-        }
-    }
-
-    /**
-     * 获取变量在栈上的偏移
-     * 
-     * @param name   符号名
-     * @param curPos 当前位置（报错用）
-     * @return 栈偏移
-     * @throws AnalyzeError
-     */
-    private int getOffset(String name, Pos curPos) throws AnalyzeError {
-        SymbolEntry entry = this.table.get(name,this.deep,curPos);
-        if (entry == null) {
-            throw new AnalyzeError(ErrorCode.NotDeclared, curPos);
-        } else {
-            return entry.getStackOffset();
+            this.table.setInitialized(entry);
         }
     }
 
     /**
      * 获取变量是否是常量
      * 
-     * @param name   符号名
-     * @param curPos 当前位置（报错用）
+     * @param token  符号所在的 token
      * @return 是否为常量
      * @throws AnalyzeError
      */
-    private boolean isConstant(String name, Pos curPos) throws AnalyzeError {
-        SymbolEntry entry = this.table.get(name,this.deep,curPos);
-        if (entry == null) {
-            throw new AnalyzeError(ErrorCode.NotDeclared, curPos);
+    private boolean isConstant(int token) throws AnalyzeError {
+        int entry = this.table.get(tokens.name(token),this.deep);
+        if (entry < 0) {
+            throw new AnalyzeError(ErrorCode.NotDeclared, tokens.getSource(), tokens.start(token));
         } else {
-            return entry.isConstant();
+            return this.table.isConstant(entry);
         }
     }
 
-    private boolean isInitialized(String name, Pos curPos) throws AnalyzeError {
-        SymbolEntry entry = this.table.get(name,this.deep,curPos);
-        if(entry==null){
-            throw new AnalyzeError(ErrorCode.NotDeclared, curPos);
+    private boolean isInitialized(int entry, int token) throws AnalyzeError {
+        if(entry<0){
+            throw new AnalyzeError(ErrorCode.NotDeclared, tokens.getSource(), tokens.start(token));
         }
-        else if (entry.isInitialized()) {
+        else if (this.table.isInitialized(entry)) {
             return true;
         }else {
-            throw new AnalyzeError(ErrorCode.NotInitialized, curPos);
+            throw new AnalyzeError(ErrorCode.NotInitialized, tokens.getSource(), tokens.start(token));
         }
     }
 
@@ -279,22 +386,39 @@ public final class Analyser {
         // 程序 -> 'begin' 主过程 'end'
         // 示例函数，示例如何调用子程序
         // 'begin'
+        // 每个顶层的声明或函数先建树，再马上生成指令，之后语法树就可以清空了
         while(!check(TokenType.EOF)){
             while(check(TokenType.LET_KW)||check(TokenType.CONST_KW)){
-                this.table.addAllInstructions(analyseDeclStmt(),this.deep);
+                analyseGlobalDeclStmt();
             }
             while(check(TokenType.FN_KW)){
+                if(skipUnreachableFunction())
+                    continue;
                 analyseFunction();
             }
         }
         expect(TokenType.EOF);
     }
 
-    private List<Instruction> analyseFunction() throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
+    /**
+     * 全局声明的初始化代码写进 _start
+     */
+    private void analyseGlobalDeclStmt() throws CompileError {
+        ast.clear();
+        int decl = analyseDeclStmt();
+        if(decl >= 0)
+            lowering.lowerStatement(decl, this.table.getCode(this.deep));
+    }
+
+    private void analyseFunction() throws CompileError {
+        analyseFunctionSignature();
+        analyseFunctionBody();
+    }
+
+    private void analyseFunctionSignature() throws CompileError {
         expect(TokenType.FN_KW);
-        Token name = expect(TokenType.IDENT);
-        addSymbol(name,NameType.Proc, TokenType.VOID_KW,this.deep,true,true,name.getStartPos());
+        int name = expect(TokenType.IDENT);
+        addSymbol(name,NameType.Proc, TokenType.VOID_KW,this.deep,true,true);
         expect(TokenType.L_PAREN);
         if(check(TokenType.R_PAREN)){
             expect(TokenType.R_PAREN);
@@ -303,14 +427,19 @@ public final class Analyser {
             expect(TokenType.R_PAREN);
         }
         expect(TokenType.ARROW);
-        Token returnType = expectReturnTy();
-        if(returnType.getTokenType() == TokenType.INT_KW){
-            this.table.setFuncReturn(name.getValueString(),this.deep,name.getStartPos(),TokenType.INT_KW);
+        int returnType = expectReturnTy();
+        if(tokens.type(returnType) == TokenType.INT_KW){
+            this.table.setFuncReturn(tokens.name(name),this.deep,TokenType.INT_KW);
         }
-        instructions.addAll(analyseBlockStmt());
-        instructions.add(new Instruction(Operation.ret));
-        this.table.addAllInstructions(instructions,this.deep+1);
-        return instructions;
+        this.table.getNowFuncTable().sealParams();
+    }
+
+    private void analyseFunctionBody() throws CompileError {
+        // 函数体写进这个函数自己的缓冲区
+        CodeBuffer code = this.table.getCode(this.deep+1);
+        ast.clear();
+        analyseBlockStmt(code);
+        lowering.endFunction(code);
     }
 
     private void analyseFunctionParamList() throws CompileError {
@@ -327,334 +456,485 @@ public final class Analyser {
             isConst = true;
             expect(TokenType.CONST_KW);
         }
-        Token nameToken=expect(TokenType.IDENT);
+        int nameToken=expect(TokenType.IDENT);
         expect(TokenType.COLON);
-        Token ty=expectTy();
-        addSymbol(nameToken,NameType.Params,ty.getTokenType(),this.deep+1,true,isConst,nameToken.getStartPos());
+        int ty=expectTy();
+        addSymbol(nameToken,NameType.Params,tokens.type(ty),this.deep+1,true,isConst);
     }
 
-    private List<Instruction> analyseBlockStmt() throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
-        this.deep++;
-        expect(TokenType.L_BRACE);
-        while(!check(TokenType.R_BRACE)){
-            if(check(TokenType.LET_KW)){
-                instructions.addAll(analyseLet());
-            } else if(check(TokenType.CONST_KW)){
-                instructions.addAll(analyseConst());
-            } else if(check(TokenType.IF_KW)){
-                instructions.addAll(analyseIfStmt());
-            }  else if(check(TokenType.WHILE_KW)){
-                instructions.addAll(analyseWhileStmt());
-            } else if(check(TokenType.RETURN_KW)){
-                instructions.addAll(analyseReturnStmt());
-            } else if(check(TokenType.L_BRACE)){
-                instructions.addAll(analyseBlockStmt());
-            } else if(check(TokenType.SEMICOLON)){
-                instructions.addAll(analyseEmptyStmt());
-            } else{
-                instructions.addAll(analyseExpr());
-                expect(TokenType.SEMICOLON);
-                instructions.addAll(OperatorTree.addAllReset());
+    // 语句和表达式都不递归，嵌套的结构压在 frames 上，每帧 FRAME 个 int：类型和四个字段
+    private static final int FRAME = 5;
+    private final IntStack frames = new IntStack();
+
+    // 语句帧
+    /** 语句块：a 是 BLOCK 节点，b 是最后一条语句 */
+    private static final int BLOCK_FRAME = 0;
+    /** if 正在分析某个分支的语句块：a 是 IF 节点，b 是最后一个分支，c 是这个分支的条件，d 是条件的 token */
+    private static final int IF_FRAME = 1;
+    /** if 正在分析 else 的语句块：a 是 IF 节点，b 是最后一个分支 */
+    private static final int ELSE_FRAME = 2;
+    /** while 正在分析循环体：a 是 while 的 token，c 是条件 */
+    private static final int WHILE_FRAME = 3;
+
+    // 表达式帧
+    /** 负号：a 是 token */
+    private static final int NEG_FRAME = 4;
+    /** 括号 */
+    private static final int GROUP_FRAME = 5;
+    /** 赋值：a 是变量的 token，b 是变量地址 */
+    private static final int ASSIGN_FRAME = 6;
+    /** 函数调用：a 是 CALL 节点，b 是还差几个参数，c 是最后一个参数 */
+    private static final int CALL_FRAME = 7;
+    /** 二元运算：a 是运算符的 token，b 是左边的操作数 */
+    private static final int BINARY_FRAME = 8;
+
+    // analyseStatement 的返回值：进入了一个新的语句块，语句还没结束
+    private static final int OPENED = -2;
+
+    private void push(int kind, int a, int b, int c, int d) {
+        frames.push(kind);
+        frames.push(a);
+        frames.push(b);
+        frames.push(c);
+        frames.push(d);
+    }
+
+    private int top() {
+        return frames.size() - FRAME;
+    }
+
+    private int topKind(int base) {
+        return frames.size() > base ? frames.get(top()) : -1;
+    }
+
+    private int field(int k) {
+        return frames.get(top() + k);
+    }
+
+    private void setField(int k, int value) {
+        frames.set(top() + k, value);
+    }
+
+    private void pop() {
+        frames.truncate(top());
+    }
+
+    /**
+     * 分析一个语句块，里面任意深的嵌套都用 frames 展开，不递归
+     *
+     * @param code 不为 null 时最外层块里的每条语句分析完就直接生成到 code 里并清空语法树，不再返回语句块
+     */
+    private int analyseBlockStmt(CodeBuffer code) throws CompileError {
+        int base = frames.size();
+        openBlock();
+        while(true){
+            int stmt;
+            if(!check(TokenType.R_BRACE)){
+                stmt = analyseStatement();
+            }else{
+                expect(TokenType.R_BRACE);
+                this.table.outDeep(this.deep);
+                this.deep--;
+                int block = field(1);
+                pop();
+                if(frames.size() == base)
+                    return code != null ? -1 : block;
+                stmt = closeNested(block);
             }
-        }
-        expect(TokenType.R_BRACE);
-        this.table.outDeep(this.deep);
-        this.deep--;
-        return instructions;
-    }
-
-    private List<Instruction> analyseIfStmt() throws CompileError {
-        expect(TokenType.IF_KW);
-        ConditionTree conditionTree=new ConditionTree();
-        BooleanTree booleanTree=analyseBooleanExpr();
-        booleanTree.setTrueInstructions(analyseBlockStmt());
-        conditionTree.add(booleanTree);
-        while(check(TokenType.ELSE_KW)){
-            expect(TokenType.ELSE_KW);
-            if(check(TokenType.IF_KW)){
-                expect(TokenType.IF_KW);
-                booleanTree=analyseBooleanExpr();
-                booleanTree.setTrueInstructions(analyseBlockStmt());
-                conditionTree.add(booleanTree);
+            if(stmt == OPENED || stmt < 0)
+                continue;
+            // 一条完整的语句，接到外面的语句块上
+            if(code != null && top() == base){
+                lowering.lowerStatement(stmt, code);
+                ast.clear();
+            }else{
+                setField(2, ast.append(field(1), field(2), stmt));
             }
-            else{
-                booleanTree.setInstructions(new ArrayList<>());
-                booleanTree.setOffset(new Instruction(Operation.br,(long)1));
-                booleanTree.setTrueInstructions(analyseBlockStmt());
-                conditionTree.add(booleanTree);
-                break;
-            }   
         }
-        return conditionTree.generate();
     }
 
-    private List<Instruction> analyseWhileStmt() throws CompileError {
-        expect(TokenType.WHILE_KW);
-        WhileTree whileTree=new WhileTree();
-        BooleanTree booleanTree=analyseBooleanExpr();
-        booleanTree.setTrueInstructions(analyseBlockStmt());
-        whileTree.setBooleanTree(booleanTree);
-        return whileTree.generate();
+    private void openBlock() throws CompileError {
+        this.deep++;
+        int block = ast.add(Ast.BLOCK, expect(TokenType.L_BRACE), 0);
+        push(BLOCK_FRAME, block, -1, 0, 0);
     }
 
-    
-    private List<Instruction> analyseEmptyStmt() throws CompileError {
+    /**
+     * 分析一条语句
+     *
+     * @return 语句的节点；空语句返回 -1；遇到嵌套的语句块返回 OPENED，语句要等块结束时由 closeNested 完成
+     */
+    private int analyseStatement() throws CompileError {
+        if(check(TokenType.LET_KW)){
+            return analyseLet();
+        } else if(check(TokenType.CONST_KW)){
+            return analyseConst();
+        } else if(check(TokenType.IF_KW)){
+            int stmt = ast.add(Ast.IF, expect(TokenType.IF_KW), 0);
+            int token = tokens.peekIndex();
+            int cond = analyseBooleanExpr();
+            push(IF_FRAME, stmt, -1, cond, token);
+            openBlock();
+            return OPENED;
+        }  else if(check(TokenType.WHILE_KW)){
+            int token = expect(TokenType.WHILE_KW);
+            int cond = analyseBooleanExpr();
+            push(WHILE_FRAME, token, 0, cond, 0);
+            openBlock();
+            return OPENED;
+        } else if(check(TokenType.RETURN_KW)){
+            return analyseReturnStmt();
+        } else if(check(TokenType.L_BRACE)){
+            openBlock();
+            return OPENED;
+        } else if(check(TokenType.SEMICOLON)){
+            return analyseEmptyStmt();
+        } else{
+            int token = tokens.peekIndex();
+            int expr = analyseExpr();
+            expect(TokenType.SEMICOLON);
+            return ast.add(Ast.EXPR_STMT, token, 0, expr);
+        }
+    }
+
+    /**
+     * 一个嵌套的语句块结束了，按它外面的帧完成对应的语句
+     *
+     * @return 完成的语句，或者又进入了下一个语句块（else）时返回 OPENED
+     */
+    private int closeNested(int block) throws CompileError {
+        switch (field(0)) {
+            case IF_FRAME: {
+                int arm = ast.add(Ast.ARM, field(4), 0, field(3), block);
+                setField(2, ast.append(field(1), field(2), arm));
+                if(check(TokenType.ELSE_KW)){
+                    expect(TokenType.ELSE_KW);
+                    if(check(TokenType.IF_KW)){
+                        expect(TokenType.IF_KW);
+                        int token = tokens.peekIndex();
+                        setField(3, analyseBooleanExpr());
+                        setField(4, token);
+                    }else{
+                        setField(0, ELSE_FRAME);
+                    }
+                    openBlock();
+                    return OPENED;
+                }
+                int stmt = field(1);
+                pop();
+                return stmt;
+            }
+            case ELSE_FRAME: {
+                ast.append(field(1), field(2), block);
+                int stmt = field(1);
+                pop();
+                return stmt;
+            }
+            case WHILE_FRAME: {
+                int stmt = ast.add(Ast.WHILE, field(1), 0, field(3), block);
+                pop();
+                return stmt;
+            }
+            default:
+                // 直接嵌套的语句块
+                return block;
+        }
+    }
+
+    private int analyseEmptyStmt() throws CompileError {
         expect(TokenType.SEMICOLON);
-        return new ArrayList<>();
+        return -1;
     }
 
-    private List<Instruction> analyseReturnStmt() throws CompileError {
-        Token token=expect(TokenType.RETURN_KW);
-        List<Instruction> instructions=new ArrayList<>();
+    private int analyseReturnStmt() throws CompileError {
+        int token=expect(TokenType.RETURN_KW);
+        int value = -1;
         if(!check(TokenType.SEMICOLON)){
             if (this.table.getNowFuncTable().getTokenType()==TokenType.VOID_KW)
-                throw new AnalyzeError(ErrorCode.WrongReturn, token.getStartPos());
-            instructions.add(new Instruction(Operation.arga,(long)0));
-            instructions.addAll(analyseExpr());
-            instructions.add(new Instruction(Operation.store_64));
+                throw new AnalyzeError(ErrorCode.WrongReturn, tokens.getSource(), tokens.start(token));
+            value = analyseExpr();
         }
         expect(TokenType.SEMICOLON);
-        instructions.add(new Instruction(Operation.ret));
-        return instructions;
-    }
-
-    private BooleanTree analyseBooleanExpr() throws CompileError {
-        BooleanTree booleanTree=new BooleanTree();
-        Instruction b;
-        List<Instruction> instructions = new ArrayList<Instruction>(analyseExpr());
-        if(nextIf(TokenType.EQ)!=null){
-            instructions.addAll(analyseExpr());
-            instructions.add(new Instruction(Operation.cmp_i));
-            b=new Instruction(Operation.br_false,(long)-1);
-        }else if(nextIf(TokenType.NEQ)!=null){
-            instructions.addAll(analyseExpr());
-            instructions.add(new Instruction(Operation.cmp_i));
-            b=new Instruction(Operation.br_true,(long)-1);
-        }else if(nextIf(TokenType.LT)!=null){
-            instructions.addAll(analyseExpr());
-            instructions.add(new Instruction(Operation.cmp_i));
-            instructions.add(new Instruction(Operation.set_lt));
-            b=new Instruction(Operation.br_true,(long)-1);
-        }else if(nextIf(TokenType.GT)!=null){
-            instructions.addAll(analyseExpr());
-            instructions.add(new Instruction(Operation.cmp_i));
-            instructions.add(new Instruction(Operation.set_gt));
-            b=new Instruction(Operation.br_true,(long)-1);
-        }else if(nextIf(TokenType.LE)!=null){
-            instructions.addAll(analyseExpr());
-            instructions.add(new Instruction(Operation.cmp_i));
-            instructions.add(new Instruction(Operation.set_gt));
-            b=new Instruction(Operation.br_false,(long)-1);
-        }else if(nextIf(TokenType.GE)!=null){
-            instructions.addAll(analyseExpr());
-            instructions.add(new Instruction(Operation.cmp_i));
-            instructions.add(new Instruction(Operation.set_lt));
-            b=new Instruction(Operation.br_false,(long)-1);
+        return value >= 0 ? ast.add(Ast.RETURN, token, 0, value) : ast.add(Ast.RETURN, token, 0);
+    }
+
+    /**
+     * 条件：一个表达式，或者两个表达式比较
+     */
+    private int analyseBooleanExpr() throws CompileError {
+        int token = tokens.peekIndex();
+        int left = analyseExpr();
+        TokenType ty = peek();
+        if(ty == TokenType.EQ || ty == TokenType.NEQ || ty == TokenType.LT
+                || ty == TokenType.GT || ty == TokenType.LE || ty == TokenType.GE){
+            next();
+            return ast.add(Ast.COND, token, ty.ordinal(), left, analyseExpr());
         }else{
-            b=new Instruction(Operation.br_true,(long)-1);
+            return ast.add(Ast.COND, token, 0, left);
         }
-        booleanTree.setInstructions(instructions);
-        booleanTree.setOffset(b);
-        return booleanTree;
     }
 
-    private List<Instruction> analyseDeclStmt() throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
+    private int analyseDeclStmt() throws CompileError {
         if(check(TokenType.LET_KW)){
-            instructions.addAll(analyseLet());
+            return analyseLet();
         }else if(check(TokenType.CONST_KW)){
-            instructions.addAll(analyseConst());
+            return analyseConst();
         }else{
-            throw new ExpectedTokenError(getList( TokenType.LET_KW, TokenType.CONST_KW), next());
+            throw new ExpectedTokenError(getList( TokenType.LET_KW, TokenType.CONST_KW), tokens.token(next()));
         }
-        return instructions;
     }
 
-    private List<Instruction> analyseLet() throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
+    private int analyseLet() throws CompileError {
         expect(TokenType.LET_KW);
-        Token nameToken = expect(TokenType.IDENT);
+        int nameToken = expect(TokenType.IDENT);
         expect(TokenType.COLON);
-        Token ty=expectTy();
-        if(nextIf(TokenType.ASSIGN)!=null){
-            addSymbol(nameToken,NameType.Var,ty.getTokenType(),this.deep,true,false,nameToken.getStartPos());
+        int ty=expectTy();
+        int stmt = -1;
+        if(nextIf(TokenType.ASSIGN)){
+            // 初始值里出现的同名变量是外层的那个，所以先分析初始值再添加符号
+            int value = analyseExpr();
+            int symbol = addSymbol(nameToken,NameType.Var,tokens.type(ty),this.deep,true,false);
             //获得变量地址
-            instructions.add(getVarOrParamAddress(nameToken.getValueString(), nameToken.getStartPos()));
-            instructions.addAll(analyseExpr());
-            instructions.add(new Instruction(Operation.store_64));
+            int address = getVarOrParamAddress(symbol, nameToken);
+            stmt = ast.add(Ast.ASSIGN, nameToken, address, value);
         }
         else
-            addSymbol(nameToken,NameType.Var,ty.getTokenType(),this.deep,false,false,nameToken.getStartPos());
+            addSymbol(nameToken,NameType.Var,tokens.type(ty),this.deep,false,false);
         expect(TokenType.SEMICOLON);
-        return instructions;
+        return stmt;
     }
 
-    private List<Instruction> analyseConst() throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
-        expect(TokenType.LET_KW);
-        Token nameToken = expect(TokenType.IDENT);
+    private int analyseConst() throws CompileError {
+        expect(TokenType.CONST_KW);
+        int nameToken = expect(TokenType.IDENT);
         expect(TokenType.COLON);
-        Token ty=expectTy();
+        int ty=expectTy();
         expect(TokenType.ASSIGN);
-        addSymbol(nameToken,NameType.Var,ty.getTokenType(),this.deep,true,false,nameToken.getStartPos());
+        // 和 let 一样先分析初始值，读写和 setValue 都落在新添加的这个符号上
+        int value = analyseExpr();
+        int symbol = addSymbol(nameToken,NameType.Var,tokens.type(ty),this.deep,true,true);
         //获得变量地址
-        instructions.add(getVarOrParamAddress(nameToken.getValueString(), nameToken.getStartPos()));
-        instructions.addAll(analyseExpr());
-        instructions.add(new Instruction(Operation.store_64));
+        int address = getVarOrParamAddress(symbol, nameToken);
         expect(TokenType.SEMICOLON);
-        return instructions;
+        if(folding != null && ast.kind(value) == Ast.PUSH){
+            // 初始值折叠成了常量：之后读它的地方都写成 push
+            this.table.setValue(symbol, ast.constant(ast.data(value)));
+            // 局部常量连位置和赋值一起去掉，全局常量的全局项已经分配，照常初始化
+            if(this.deep > 1)
+                return -1;
+        }
+        return ast.add(Ast.ASSIGN, nameToken, address, value);
     }
 
-    private boolean isOperatior() throws TokenizeError {
-        TokenType ty = peek().getTokenType();
-        if(ty == TokenType.PLUS || ty == TokenType.MINUS || ty == TokenType.MUL || ty == TokenType.DIV)
-            return true;
-        else
-            return false;
+    /**
+     * 二元运算符的优先级，越大越先结合，0 表示不是二元运算符
+     */
+    private static int precedence(TokenType ty) {
+        switch (ty) {
+            case PLUS:
+            case MINUS:
+                return 1;
+            case MUL:
+            case DIV:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 分析一个表达式，不递归：
+     * 还没有结束的负号、括号、赋值、函数调用和二元运算都压在 frames 上，
+     * 拿到一个操作数后先结合栈顶的负号，再看后面的运算符；
+     * 遇到同级或更低的运算符时先结合栈顶的二元运算，所以都是左结合；
+     * 表达式结束时结合所有二元运算，再按栈顶的帧收尾（右括号、赋值、下一个参数）
+     */
+    private int analyseExpr() throws CompileError {
+        int base = frames.size();
+        while(true){
+            int operand = analyseOperand();
+            if(operand < 0)
+                continue;
+            while(true){
+                while(topKind(base) == NEG_FRAME){
+                    operand = folding != null ? folding.neg(field(1), operand) : ast.add(Ast.NEG, field(1), 0, operand);
+                    pop();
+                }
+                TokenType ty = peek();
+                if(ty == TokenType.AS_KW){
+                    // as 只作用于紧挨着的操作数，类型只有 int，不产生节点
+                    analyseAsExpr();
+                    continue;
+                }
+                int precedence = precedence(ty);
+                if(precedence > 0){
+                    while(topKind(base) == BINARY_FRAME && precedence(tokens.type(field(1))) >= precedence){
+                        operand = reduceBinary(operand);
+                    }
+                    push(BINARY_FRAME, next(), operand, 0, 0);
+                    break;
+                }
+                // 这一层表达式到此结束
+                while(topKind(base) == BINARY_FRAME){
+                    operand = reduceBinary(operand);
+                }
+                if(frames.size() == base)
+                    return operand;
+                operand = closeOperand(operand);
+                if(operand < 0)
+                    break;
+            }
+        }
     }
 
-    private List<Instruction> analyseExpr() throws CompileError {
-        List<Instruction> instructions = new ArrayList<>();
+    private int reduceBinary(int right) {
+        int operator = field(1);
+        int node = folding != null ? folding.binary(operator, tokens.type(operator), field(2), right)
+                : ast.add(Ast.BINARY, operator, tokens.type(operator).ordinal(), field(2), right);
+        pop();
+        return node;
+    }
+
+    /**
+     * 表达式在括号、赋值或者参数里结束时收尾
+     *
+     * @return 收尾得到的操作数；还要继续读下一个参数时返回 -1
+     */
+    private int closeOperand(int operand) throws CompileError {
+        switch (field(0)) {
+            case GROUP_FRAME:
+                expect(TokenType.R_PAREN);
+                pop();
+                return operand;
+            case ASSIGN_FRAME: {
+                int token = field(1);
+                int expr = ast.add(Ast.ASSIGN, token, field(2), operand);
+                pop();
+                declareSymbol(token);
+                return expr;
+            }
+            default: {
+                // CALL_FRAME
+                int call = field(1);
+                setField(3, ast.append(call, field(3), operand));
+                int remaining = field(2) - 1;
+                setField(2, remaining);
+                if(remaining > 0){
+                    if(check(TokenType.COMMA)){
+                        expect(TokenType.COMMA);
+                        return -1;
+                    }
+                    int nameToken=next();
+                    throw new AnalyzeError(ErrorCode.WrongParamsNum, tokens.getSource(), tokens.start(nameToken));
+                }
+                pop();
+                return finishCall(call);
+            }
+        }
+    }
 
+    /**
+     * 读一个操作数
+     *
+     * @return 操作数的节点；遇到负号、左括号、赋值、有参数的调用时压入对应的帧并返回 -1
+     */
+    private int analyseOperand() throws CompileError {
         if(check(TokenType.MINUS)){
-            instructions.addAll(analyseNegateExpr());
+            push(NEG_FRAME, expect(TokenType.MINUS), 0, 0, 0);
+            return -1;
         } else if(check(TokenType.IDENT)){
             // System.out.println("used.");
-            Token token = expect(TokenType.IDENT);
+            int token = expect(TokenType.IDENT);
             if(check(TokenType.ASSIGN)){
-                instructions.addAll(analyseAssignExpr(token));
+                int entry = this.table.get(tokens.name(token),this.deep);
+                expectNotConstant(entry, token);
+                expect(TokenType.ASSIGN);
+                push(ASSIGN_FRAME, token, getVarOrParamAddress(entry, token), 0, 0);
+                return -1;
             } else if(check(TokenType.L_PAREN)){
-                instructions.addAll(analyseCallExpr(token));
+                return analyseCallExpr(token);
             } else {
-                instructions.addAll(analyseIdentExpr(token));
+                return analyseIdentExpr(token);
             }
         } else if(check(TokenType.L_PAREN)){
-            instructions.addAll(analyseGroupExpr());
+            expect(TokenType.L_PAREN);
+            push(GROUP_FRAME, 0, 0, 0, 0);
+            return -1;
         } else {
-            instructions.addAll(analyseLiteralExpr());
+            return analyseLiteralExpr();
         }
-
-        if(isOperatior()){
-            instructions.addAll(analyseOperatorExpr());
-        } else if(check(TokenType.AS_KW)){
-            analyseAsExpr();
-        }
-
-        return instructions;
-    }
-
-    private List<Instruction> analyseNegateExpr() throws CompileError {
-        List<Instruction> instructions = new ArrayList<>();
-        expect(TokenType.MINUS);
-        instructions.add(new Instruction(Operation.push,(long)0));
-        instructions.addAll(analyseExpr());
-        instructions.add(new Instruction(Operation.sub_i));
-        return instructions;
     }
 
-    private List<Instruction> analyseAssignExpr(Token token) throws CompileError {
-        List<Instruction> instructions = new ArrayList<>();
-        expectNotConstant(token);
-        expect(TokenType.ASSIGN);
-        instructions.add(getVarOrParamAddress(token.getValueString(), token.getStartPos()));
-        instructions.addAll(analyseExpr());
-        instructions.add(new Instruction(Operation.store_64));
-        declareSymbol(token.getValueString(), token.getStartPos());
-        return instructions;
-    }
-
-    private List<Instruction> analyseCallExpr(Token token) throws CompileError {
-        List<Instruction> instructions = new ArrayList<>();
-        List<TokenType> paraTypes = this.table.getFunctionParamsType(token);
+    /**
+     * @return 没有参数时直接返回 CALL 节点，否则压入 CALL_FRAME 并返回 -1
+     */
+    private int analyseCallExpr(int token) throws CompileError {
+        int name = tokens.name(token);
+        List<TokenType> paraTypes = this.table.getFunctionParamsType(name);
+        if (paraTypes == null)
+            throw new AnalyzeError(ErrorCode.ExpectFuncToken, tokens.getSource(), tokens.start(token));
         expect(TokenType.L_PAREN);
-        instructions.addAll(this.table.addstackllocInstruction(token.getValueString()));
+        int call = ast.add(Ast.CALL, token, 0);
 
         if(check(TokenType.R_PAREN) && paraTypes.size() == 0 ){
-            ;
+            return finishCall(call);
         } else if (!check(TokenType.R_PAREN) && paraTypes.size() > 0){
-            instructions.addAll(analyseCallParamList(paraTypes));
+            push(CALL_FRAME, call, paraTypes.size(), -1, 0);
+            return -1;
         } else {
-            Token nextToken=peek();
-            throw new AnalyzeError(ErrorCode.WrongParamsNum, nextToken.getStartPos());
+            throw new AnalyzeError(ErrorCode.WrongParamsNum, tokens.getSource(), tokens.start(tokens.peekIndex()));
         }
+    }
+
+    private int finishCall(int call) throws CompileError {
         expect(TokenType.R_PAREN);
-        if(this.table.checkOutFunc(token.getValueString())){
-            Instruction ins = new Instruction(Operation.callname,(long)this.table.getGlobalId(token));
-            // System.out.println(ins);
-            instructions.add(ins);
-            // System.out.println(token);
-            // System.out.println(this.table.getGlobalId(token));
+        int name = tokens.name(ast.token(call));
+        int returnSlots = this.table.getReturnSlots(name);
+        if(this.table.checkOutFunc(name)){
+            ast.setData(call, Ast.callData(this.table.getGlobalId(name,TokenType.IDENT), returnSlots, true));
         }else{
-            instructions.add(new Instruction(Operation.call,this.table.getFunclId(token)));
-        }
-        
-        return instructions;
-    }
-
-    private List<Instruction> analyseCallParamList(List<TokenType> tokenTypes) throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
-        instructions.addAll(analyseExpr());
-        instructions.addAll(OperatorTree.addAllReset());
-        int i;
-        for(i=1;i<tokenTypes.size();i++){
-            if(check(TokenType.COMMA)){
-                expect(TokenType.COMMA);
-                instructions.addAll(analyseExpr());
-                instructions.addAll(OperatorTree.addAllReset());
-            } else {
-                Token nameToken=next();
-                throw new AnalyzeError(ErrorCode.WrongParamsNum, nameToken.getStartPos());
-            }
+            ast.setData(call, Ast.callData(this.table.getFunclId(name), returnSlots, false));
         }
-        return instructions;
+        return call;
     }
 
     
-    private List<Instruction> analyseIdentExpr(Token token) throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
-        if(!isInitialized(token.getValueString(), token.getStartPos())) {
-            throw new AnalyzeError(ErrorCode.NotInitialized, token.getStartPos());
+    private int analyseIdentExpr(int token) throws CompileError {
+        // 只查一次表，检查和取地址都用这个结果
+        int entry = this.table.get(tokens.name(token),this.deep);
+        if(!isInitialized(entry, token)) {
+            throw new AnalyzeError(ErrorCode.NotInitialized, tokens.getSource(), tokens.start(token));
         }
-        instructions.add(getVarOrParamAddress(token.getValueString(), token.getStartPos()));
-        instructions.add(new Instruction(Operation.load_64));
-        return instructions;
-    }
-
-    private List<Instruction> analyseGroupExpr() throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
-        expect(TokenType.L_PAREN);
-        instructions.addAll(OperatorTree.getNewOperator(TokenType.L_PAREN));
-        instructions.addAll(analyseExpr());
-        expect(TokenType.R_PAREN);
-        instructions.addAll(OperatorTree.getNewOperator(TokenType.R_PAREN));
-        return instructions;
+        if(this.table.isKnown(entry))
+            return ast.add(Ast.PUSH, token, ast.addConstant(this.table.getValue(entry)));
+        return ast.add(Ast.LOAD, token, getVarOrParamAddress(entry, token));
     }
 
-    private List<Instruction> analyseLiteralExpr() throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
-        Token token = expectLiteral();
-        TokenType ty = token.getTokenType();
+    private int analyseLiteralExpr() throws CompileError {
+        int token = expectLiteral();
+        TokenType ty = tokens.type(token);
         if(ty == TokenType.UINT_LITERAL){
-            instructions.add(new Instruction(Operation.push, (long)token.getValue()));
+            return ast.add(Ast.PUSH, token, ast.addConstant(tokens.value(token)));
+        } else if (strings != null) {
+            return ast.add(Ast.STRING, token, strings[nextString++]);
         } else {
-            addSymbol(token,NameType.Var,TokenType.STRING_LITERAL,1,true,true,token.getStartPos());
-            instructions.add(getStringAddress(token));
+            return ast.add(Ast.STRING, token, addString(token));
         }
-        return instructions;
     }
 
-    private List<Instruction> analyseOperatorExpr() throws CompileError {
-        List<Instruction> instructions=new ArrayList<>();
-        Token operator=next();
-        instructions.addAll(OperatorTree.getNewOperator(operator.getTokenType()));
-        instructions.addAll(analyseExpr());
-        return instructions;
+    /**
+     * 把字符串字面量登记成全局项
+     *
+     * @return 它在全局表里的编号
+     */
+    private int addString(int token) throws AnalyzeError {
+        addSymbol(token,NameType.Var,TokenType.STRING_LITERAL,1,true,true);
+        return getStringAddress(token);
     }
 
-    private Token analyseAsExpr() throws CompileError {
+    private int analyseAsExpr() throws CompileError {
         expect(TokenType.AS_KW);
-        Token ty=expectTy();
+        int ty=expectTy();
         return ty;
     }
 
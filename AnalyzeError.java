@@ -5,6 +5,10 @@ public class AnalyzeError extends CompileError {
     ErrorCode code;
     Pos pos;
 
+    // 只记录出错的偏移，行列等到 getPos() 时再换算
+    StringIter source;
+    int offset;
+
     @Override
     public ErrorCode getErr() {
         return code;
@@ -12,6 +16,9 @@ public class AnalyzeError extends CompileError {
 
     @Override
     public Pos getPos() {
+        if (pos == null && source != null) {
+            pos = source.posOf(offset);
+        }
         return pos;
     }
 
@@ -25,8 +32,19 @@ public class AnalyzeError extends CompileError {
         this.pos = pos;
     }
 
+    /**
+     * @param code
+     * @param source 源文件
+     * @param offset 出错处在源文件中的偏移
+     */
+    public AnalyzeError(ErrorCode code, StringIter source, int offset) {
+        this.code = code;
+        this.source = source;
+        this.offset = offset;
+    }
+
     @Override
     public String toString() {
-        return new StringBuilder().append("Analyze Error: ").append(code).append(", at: ").append(pos).toString();
+        return new StringBuilder().append("Analyze Error: ").append(code).append(", at: ").append(getPos()).toString();
     }
 }
@@ -1,7 +1,9 @@
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class App {
     public static void main(String[] args) throws Exception {
@@ -14,14 +16,44 @@ public class App {
 
         String inputFileName = args[1];
         String outputFileName = args[2];
+        // 可选参数：--tok-cache 把 token 流缓存在源文件旁边，--lazy 只编译从 main 能调用到的函数，
+        // --fold 折叠常量，--peephole 打开全部窥孔优化，--peephole=neg-const,load-load 只打开列出的规则，--peephole-report 把删掉的指令数打到 stderr
+        boolean useCache = false;
+        boolean lazy = false;
+        boolean folding = false;
+        Set<Peephole.Rule> peephole = null;
+        boolean peepholeReport = false;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--tok-cache")) {
+                useCache = true;
+            } else if (args[i].equals("--lazy")) {
+                lazy = true;
+            } else if (args[i].equals("--fold")) {
+                folding = true;
+            } else if (args[i].equals("--peephole")) {
+                peephole = Peephole.allRules();
+            } else if (args[i].startsWith("--peephole=")) {
+                peephole = EnumSet.noneOf(Peephole.Rule.class);
+                for (String name : args[i].substring("--peephole=".length()).split(",")) {
+                    Peephole.Rule rule = Peephole.Rule.ofOptionName(name);
+                    if (rule == null)
+                        throw new Exception("Unknown peephole rule: " + name);
+                    peephole.add(rule);
+                }
+            } else if (args[i].equals("--peephole-report")) {
+                peepholeReport = true;
+            } else {
+                throw new Exception("Unknown option: " + args[i]);
+            }
+        }
 
-        InputStream input;
+        StringIter iter;
         if (inputFileName.equals("-")) {
-            input = System.in;
+            iter = new StreamStringIter(new InputStreamReader(System.in, StandardCharsets.UTF_8));
         } else {
             try {
-                input = new FileInputStream(new File(inputFileName));
-            } catch (FileNotFoundException e) {
+                iter = new MappedStringIter(inputFileName);
+            } catch (IOException e) {
                 System.err.println("Cannot find input file.");
                 e.printStackTrace();
                 System.exit(0);
@@ -45,56 +77,33 @@ public class App {
             }
         }
 
-        Scanner scanner;
-        scanner = new Scanner(input);
-        StringIter iter = new StringIter(scanner);
         Tokenizer tokenizer = tokenize(iter);
 
         if (args[0].equals("t")) {
             // tokenize
-            List<Token> tokens = new ArrayList<Token>();
+            TokenBuffer tokens = lex(iter, tokenizer, inputFileName, useCache);
             try {
-                while (true) {
-                    Token token = tokenizer.nextToken();
-                    if (token.getTokenType().equals(TokenType.EOF)) {
-                        break;
-                    }
-                    tokens.add(token);
-                }
+                tokens.fillAll();
             } catch (Exception e) {
                 System.err.println(e);
                 System.exit(0);
                 return;
             }
             if(output != null){
-                for (Token token : tokens) {
-                    output.println(token.toString());
-                }
+                dumpTokens(tokens, output);
             }
         } else if (args[0].equals("l")) {
             // analyze
-            Analyser analyzer = new Analyser(tokenizer);
-            List<Instruction> instructions;
-            Table table = new Table();
-            List<FunctionTable> functionTables;
-            List<Token> global;
-            table = analyzer.analyse();
-            table.generate();
-            global=table.getGlobal();
-            functionTables=table.getFunctionTables();
-            // for(Token token:global){
-            //     output.println(token);
-            // }
-            // for (FunctionTable function:functionTables){
-            //     output.println(function.getName()+" pos:"+function.getPos()+"params:"+function.getParamSoltNum()+" var:"+function.getVarSoltNum()+" ->"+function.getReturnSoltNum());
-            //     output.println(function.getInstructions());
-            // }
-
-            OutPutBinary outPutBinary = new OutPutBinary(table);
-            List<Byte> bs = outPutBinary.generate();
-            byte[] temp = new byte[bs.size()];
-            for (int i = 0; i < bs.size(); i++)
-                temp[i] = bs.get(i);
+            TokenBuffer tokens = lex(iter, tokenizer, inputFileName, useCache);
+            Compiler.Options options = new Compiler.Options().setLazy(lazy).setFolding(folding).setPeephole(peephole);
+            if (ParallelAnalyser.worthwhile(tokens)) {
+                options.setForkJoinPool(ForkJoinPool.commonPool());
+            }
+            Peephole.Report report = peepholeReport ? new Peephole.Report() : null;
+            byte[] temp = Compiler.compile(tokens, options, report);
+            if (report != null) {
+                System.err.println(report);
+            }
             try {
                 biOutput.write(temp);
             } catch (IOException e) {
@@ -121,6 +130,66 @@ public class App {
         Tokenizer tokenizer = new Tokenizer(iter);
         return tokenizer;
     }
+
+    /**
+     * 准备 token 流
+     * 大文件并行分词；开启缓存时先找源文件旁边的 .tok，找不到就分词后写一份
+     */
+    private static TokenBuffer lex(StringIter iter, Tokenizer tokenizer, String inputFileName, boolean useCache) {
+        Path cache = null;
+        if (useCache && iter instanceof MappedStringIter) {
+            cache = TokenCache.pathOf(inputFileName);
+            TokenBuffer cached = TokenCache.load((MappedStringIter) iter, cache);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        TokenBuffer tokens;
+        if (ParallelLexer.worthwhile(iter)) {
+            tokens = new ParallelLexer().lex((MappedStringIter) iter);
+        } else {
+            tokens = new TokenBuffer(tokenizer);
+        }
+
+        if (cache != null) {
+            try {
+                tokens.fillAll();
+                TokenCache.store((MappedStringIter) iter, tokens, cache);
+            } catch (TokenizeError e) {
+                // 分词出错的文件不缓存，错误留到读到那里时再抛
+                tokens.complete(e);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 输出所有 token，格式和 Token.toString() 相同，整体缓冲之后再写出
+     */
+    private static void dumpTokens(TokenBuffer tokens, PrintStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16);
+        StringIter source = tokens.getSource();
+        String newLine = System.lineSeparator();
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenType type = tokens.type(i);
+            if (type == TokenType.EOF) {
+                break;
+            }
+            Pos pos = source.posOf(tokens.start(i));
+            String text = type == TokenType.IDENT || type == TokenType.STRING_LITERAL ? tokens.text(i) : null;
+            writer.write("Line: ");
+            writer.write(Integer.toString(pos.row));
+            writer.write(" Column: ");
+            writer.write(Integer.toString(pos.col));
+            writer.write(" Type: ");
+            writer.write(type.toString());
+            writer.write(" Value: ");
+            writer.write(String.valueOf(Tokenizer.valueOf(type, tokens.value(i), text)));
+            writer.write(newLine);
+        }
+        writer.flush();
+    }
 }
 
 // javac -encoding utf-8 App.java && java App l input.txt output.txt
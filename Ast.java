@@ -0,0 +1,214 @@
+/**
+ * 语法树，所有节点按列存放在几个数组里，节点就是一个 int 下标
+ * 每个节点记录：类型、第一个子节点、下一个兄弟节点、对应的 token 下标、一个 int 数据。
+ * 子节点用 first/next 串成链表，所以任意多个子节点也不需要额外的对象。
+ *
+ * 每个节点固定占 BYTES_PER_NODE 字节（数组扩容时最多再多一倍），
+ * Analyser 每分析完一条全局声明或者函数体里的一条语句就把它交给 Lowering 生成指令，然后 clear() 重用，
+ * 所以占用的内存只和最大的那条语句有关，和整个程序的大小无关
+ */
+public class Ast {
+    // 节点类型，data 的含义写在后面
+
+    /** 语句块，子节点是各条语句 */
+    public static final byte BLOCK = 1;
+    /** 表达式语句，子节点是表达式 */
+    public static final byte EXPR_STMT = 2;
+    /** 赋值（包括带初始值的 let 和 const），data 是变量地址，子节点是右边的表达式 */
+    public static final byte ASSIGN = 3;
+    /** if 语句，子节点是若干 ARM，最后可能还有一个 BLOCK 作为 else */
+    public static final byte IF = 4;
+    /** if 的一个分支，子节点是 COND 和 BLOCK */
+    public static final byte ARM = 5;
+    /** while 语句，子节点是 COND 和 BLOCK */
+    public static final byte WHILE = 6;
+    /** return 语句，有返回值时子节点是表达式 */
+    public static final byte RETURN = 7;
+    /** 条件，data 是比较运算符的 TokenType 序号（没有比较时为 0），子节点是一个或两个表达式 */
+    public static final byte COND = 8;
+    /** 取负，子节点是表达式 */
+    public static final byte NEG = 9;
+    /** 函数调用，data 见 callData()，子节点是各个参数 */
+    public static final byte CALL = 10;
+    /** 读变量，data 是变量地址 */
+    public static final byte LOAD = 11;
+    /** 整数字面量，data 是常量表里的下标 */
+    public static final byte PUSH = 12;
+    /** 字符串字面量，data 是它在全局表里的编号 */
+    public static final byte STRING = 13;
+    /** 二元运算，data 是运算符的 TokenType 序号，子节点是左右两边 */
+    public static final byte BINARY = 14;
+
+    /** 每个节点占用的字节数：kind 1 + first 4 + next 4 + token 4 + data 4 */
+    public static final int BYTES_PER_NODE = 17;
+
+    private byte[] kinds = new byte[256];
+    private int[] firsts = new int[256];
+    private int[] nexts = new int[256];
+    private int[] tokens = new int[256];
+    private int[] data = new int[256];
+    private int size = 0;
+
+    // 整数字面量
+    private long[] constants = new long[64];
+    private int constantCount = 0;
+
+    /**
+     * 新建一个没有子节点的节点
+     *
+     * @param token 节点对应的 token 下标，用来找回源码位置
+     * @return 节点编号
+     */
+    public int add(byte kind, int token, int value) {
+        if (size == kinds.length) {
+            grow();
+        }
+        kinds[size] = kind;
+        firsts[size] = -1;
+        nexts[size] = -1;
+        tokens[size] = token;
+        data[size] = value;
+        return size++;
+    }
+
+    /**
+     * 新建一个只有一个子节点的节点
+     */
+    public int add(byte kind, int token, int value, int child) {
+        int node = add(kind, token, value);
+        firsts[node] = child;
+        return node;
+    }
+
+    /**
+     * 新建一个有两个子节点的节点，second 可以是 -1
+     */
+    public int add(byte kind, int token, int value, int first, int second) {
+        int node = add(kind, token, value, first);
+        nexts[first] = second;
+        return node;
+    }
+
+    /**
+     * 把 child 接在 parent 的子节点末尾
+     *
+     * @param last parent 当前的最后一个子节点，没有时为 -1
+     * @return child，作为下一次的 last
+     */
+    public int append(int parent, int last, int child) {
+        if (last < 0) {
+            firsts[parent] = child;
+        } else {
+            nexts[last] = child;
+        }
+        return child;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = java.util.Arrays.copyOf(kinds, capacity);
+        firsts = java.util.Arrays.copyOf(firsts, capacity);
+        nexts = java.util.Arrays.copyOf(nexts, capacity);
+        tokens = java.util.Arrays.copyOf(tokens, capacity);
+        data = java.util.Arrays.copyOf(data, capacity);
+    }
+
+    public int addConstant(long value) {
+        if (constantCount == constants.length) {
+            constants = java.util.Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        return constantCount++;
+    }
+
+    /**
+     * 清空所有节点，保留已经分配的数组
+     */
+    public void clear() {
+        size = 0;
+        constantCount = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 当前数组占用的字节数
+     */
+    public long memoryBytes() {
+        return (long) kinds.length * BYTES_PER_NODE + (long) constants.length * 8;
+    }
+
+    public byte kind(int node) {
+        return kinds[node];
+    }
+
+    public int first(int node) {
+        return firsts[node];
+    }
+
+    public int next(int node) {
+        return nexts[node];
+    }
+
+    public int token(int node) {
+        return tokens[node];
+    }
+
+    public int data(int node) {
+        return data[node];
+    }
+
+    public void setData(int node, int value) {
+        data[node] = value;
+    }
+
+    public void setNext(int node, int next) {
+        nexts[node] = next;
+    }
+
+    public long constant(int index) {
+        return constants[index];
+    }
+
+    // 变量地址的编码：低两位是指令，其余是偏移
+
+    public static int address(Operation opt, long off) {
+        int kind = opt == Operation.arga ? 0 : opt == Operation.loca ? 1 : 2;
+        return (int) (off << 2) | kind;
+    }
+
+    public static Operation addressOperation(int address) {
+        switch (address & 3) {
+            case 0:
+                return Operation.arga;
+            case 1:
+                return Operation.loca;
+            default:
+                return Operation.globa;
+        }
+    }
+
+    public static long addressOffset(int address) {
+        return address >> 2;
+    }
+
+    // 函数调用的编码：低位是是否 callname，然后是返回值槽数，其余是函数编号
+
+    public static int callData(long id, int returnSlots, boolean callname) {
+        return (int) (id << 2) | (returnSlots << 1) | (callname ? 1 : 0);
+    }
+
+    public static boolean isCallname(int call) {
+        return (call & 1) != 0;
+    }
+
+    public static int callReturnSlots(int call) {
+        return (call >> 1) & 1;
+    }
+
+    public static long callId(int call) {
+        return call >> 2;
+    }
+}
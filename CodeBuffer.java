@@ -0,0 +1,87 @@
+/**
+ * 一个函数的指令缓冲区，只能在末尾追加
+ * Analyser 边分析边把指令写进来，每条指令只写一次。
+ * 跳转指令先把目标 label 的编号当作操作数写进去，bind 只记下 label 落在哪条指令上，
+ * 整个函数写完后 resolve 顺序扫一遍跳转指令，把编号换成相对偏移
+ */
+public class CodeBuffer {
+    private final InstructionBuffer instructions = new InstructionBuffer();
+
+    // 第 i 个 label 落地的指令下标，-1 表示还没落地；没有跳转的函数不分配
+    private int[] labelTargets = null;
+    private int labelCount = 0;
+    // 还没换成偏移的跳转指令的下标
+    private int[] branches = null;
+    private int branchCount = 0;
+
+    public InstructionBuffer getInstructions() {
+        return instructions;
+    }
+
+    public int size() {
+        return instructions.size();
+    }
+
+    public void emit(Operation opt) {
+        instructions.add(opt);
+    }
+
+    public void emit(Operation opt, long x) {
+        instructions.add(opt, x);
+    }
+
+    /**
+     * @return 新 label 的编号，只在这个缓冲区里有效
+     */
+    public int newLabel() {
+        if (labelTargets == null) {
+            labelTargets = new int[8];
+        } else if (labelCount == labelTargets.length) {
+            labelTargets = java.util.Arrays.copyOf(labelTargets, labelCount * 2);
+        }
+        labelTargets[labelCount] = -1;
+        return labelCount++;
+    }
+
+    /**
+     * 写一条跳到 label 的指令（br、br_true、br_false），偏移在 resolve 时填
+     */
+    public void branch(Operation opt, int label) {
+        if (branches == null) {
+            branches = new int[8];
+        } else if (branchCount == branches.length) {
+            branches = java.util.Arrays.copyOf(branches, branchCount * 2);
+        }
+        branches[branchCount++] = instructions.size();
+        instructions.add(opt, label);
+    }
+
+    /**
+     * 让 label 落在下一条要写入的指令上
+     */
+    public void bind(int label) {
+        if (labelTargets[label] >= 0) {
+            throw new Error("label bound twice");
+        }
+        labelTargets[label] = instructions.size();
+    }
+
+    /**
+     * 把所有跳转指令的操作数从 label 编号换成相对于下一条指令的偏移，之后 label 全部作废
+     * 函数写完时调用，重复调用没有影响
+     */
+    public void resolve() {
+        for (int i = 0; i < branchCount; i++) {
+            int index = branches[i];
+            int target = labelTargets[(int) instructions.operand(index)];
+            if (target < 0) {
+                throw new Error("label never bound");
+            }
+            instructions.setOperand(index, target - (index + 1));
+        }
+        labelTargets = null;
+        labelCount = 0;
+        branches = null;
+        branchCount = 0;
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.StringReader;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 编译器的库接口，App 的 l 模式也走这里
+ * 一次编译用到的 Tokenizer、TokenBuffer、Analyser、Table 都是这次调用里新建的，
+ * 全局只有 Keywords、LexerTables 这些初始化之后只读的表，所以同一个 JVM 里可以在多个线程上同时编译
+ */
+public class Compiler {
+    /**
+     * 编译选项，每次调用各用各的，也可以在调用之间共用（编译时不会修改它）
+     */
+    public static class Options {
+        // 只编译从 main 能调用到的函数，见 Reachability
+        private boolean lazy = false;
+        // 不为 null 时按函数在这个线程池上并行编译，见 ParallelAnalyser
+        private ForkJoinPool forkJoinPool = null;
+        // 不为 null 时在生成的指令上跑这些窥孔优化规则，见 Peephole
+        private Set<Peephole.Rule> peephole = null;
+        // 建树时折叠常量、化简表达式，见 Folding
+        private boolean folding = false;
+
+        public Options setLazy(boolean lazy) {
+            this.lazy = lazy;
+            return this;
+        }
+
+        public Options setForkJoinPool(ForkJoinPool forkJoinPool) {
+            this.forkJoinPool = forkJoinPool;
+            return this;
+        }
+
+        public Options setPeephole(Set<Peephole.Rule> peephole) {
+            this.peephole = peephole;
+            return this;
+        }
+
+        public Options setFolding(boolean folding) {
+            this.folding = folding;
+            return this;
+        }
+
+        public boolean isLazy() {
+            return lazy;
+        }
+
+        public ForkJoinPool getForkJoinPool() {
+            return forkJoinPool;
+        }
+
+        public Set<Peephole.Rule> getPeephole() {
+            return peephole;
+        }
+
+        public boolean isFolding() {
+            return folding;
+        }
+    }
+
+    /**
+     * 编译一段源码
+     *
+     * @return o0 二进制文件的内容
+     * @throws CompileError 和命令行编译时报出的错误相同
+     */
+    public static byte[] compile(CharSequence source, Options options) throws CompileError {
+        StringIter iter = new StreamStringIter(new StringReader(source.toString()));
+        return compile(new TokenBuffer(new Tokenizer(iter)), options);
+    }
+
+    /**
+     * 编译已经准备好的 token 流，tokens 只能用一次
+     */
+    public static byte[] compile(TokenBuffer tokens, Options options) throws CompileError {
+        return compile(tokens, options, null);
+    }
+
+    /**
+     * @param report 不为 null 时把窥孔优化删掉的指令数累加进去
+     */
+    public static byte[] compile(TokenBuffer tokens, Options options, Peephole.Report report) throws CompileError {
+        boolean[] reachable = options.isLazy() ? Reachability.reachableFunctions(tokens) : null;
+        Table table;
+        if (options.getForkJoinPool() != null) {
+            ParallelAnalyser parallelAnalyser = new ParallelAnalyser(options.getForkJoinPool());
+            parallelAnalyser.setReachable(reachable);
+            parallelAnalyser.setFolding(options.isFolding());
+            table = parallelAnalyser.analyse(tokens);
+        } else {
+            Analyser analyser = new Analyser(tokens);
+            analyser.setReachable(reachable);
+            analyser.setFolding(options.isFolding());
+            table = analyser.analyse();
+        }
+        table.generate();
+        if (options.getPeephole() != null) {
+            Peephole peephole = new Peephole(options.getPeephole(), report);
+            for (FunctionTable functionTable : table.getFunctionTables())
+                peephole.optimize(functionTable.getInstructions());
+        }
+
+        List<Byte> bs = new OutPutBinary(table).generate();
+        byte[] bytes = new byte[bs.size()];
+        for (int i = 0; i < bs.size(); i++)
+            bytes[i] = bs.get(i);
+        return bytes;
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 检查同一个 JVM 里并发编译互不影响：每个程序先顺序编译一次作为基准，
+ * 再在 THREADS 个线程上同时编译 ROUNDS 轮，任何一次结果和基准不同就以非 0 退出。
+ * 编译出错的程序比较报出的错误，编译时抛出别的异常也算不同。每个程序按几组不同的选项各算一份
+ *
+ * 用法：java ConcurrencyCheck [源文件...]，不给文件时用 input.txt
+ */
+public class ConcurrencyCheck {
+    private static final int THREADS = 64;
+    private static final int ROUNDS = 64;
+
+    // 除了给定的文件，再带上几段覆盖常量、字符串、全局变量和编译错误的程序
+    private static final String[] BUILT_IN = {
+            "const K: int = 2 * 3;\nlet g: int = K + 1;\n"
+                    + "fn f(a: int) -> int { const c: int = -K; let x: int = a * 1 + c; return x + g; }\n"
+                    + "fn main() -> void { putstr(\"f=\"); putint(f(getint())); putln(); }\n",
+            "fn fib(n: int) -> int { if n < 2 { return n; } else { return fib(n - 1) + fib(n - 2); } }\n"
+                    + "fn main() -> void { let i: int = 0; while i < 10 { putint(fib(i)); putchar(32); i = i + 1; } putln(); }\n",
+            "fn main() -> void { let x: int = 1; x = y; }\n",
+    };
+
+    public static void main(String[] args) throws Exception {
+        List<String> sources = new ArrayList<>();
+        for (String file : args.length > 0 ? args : new String[]{"input.txt"}) {
+            sources.add(read(file));
+        }
+        for (String source : BUILT_IN) {
+            sources.add(source);
+        }
+        Compiler.Options[] optionSets = {
+                new Compiler.Options(),
+                new Compiler.Options().setLazy(true),
+                new Compiler.Options().setFolding(true).setPeephole(Peephole.allRules()),
+        };
+
+        // 顺序编译的结果
+        List<String> expected = new ArrayList<>();
+        for (String source : sources) {
+            for (Compiler.Options options : optionSets) {
+                expected.add(compile(source, options));
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<String>> results = new ArrayList<>();
+        int diffs = 0;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                for (String source : sources) {
+                    for (Compiler.Options options : optionSets) {
+                        results.add(pool.submit(() -> compile(source, options)));
+                    }
+                }
+            }
+            for (int i = 0; i < results.size(); i++) {
+                if (!results.get(i).get().equals(expected.get(i % expected.size()))) {
+                    diffs++;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        System.out.println("compiles=" + results.size() + " threads=" + THREADS + " diffs=" + diffs);
+        if (diffs > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return 输出的十六进制，出错时是错误的描述
+     */
+    private static String compile(String source, Compiler.Options options) {
+        try {
+            byte[] bytes = Compiler.compile(source, options);
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (CompileError e) {
+            return "error: " + e;
+        } catch (RuntimeException | Error e) {
+            return "crash: " + e;
+        }
+    }
+
+    private static String read(String file) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * 常量折叠和代数化简，Analyser 建 NEG、BINARY 节点时经过这里
+ * 节点是自底向上建的，子节点在这之前已经化简过，所以每次只看一层，不需要单独遍历整棵树。
+ * 计算按虚拟机的 64 位补码回绕，和 Java 的 long 相同；
+ * 除数是 0（以及 MIN / -1）的除法不折叠，留给运行时报错。
+ * 会丢掉子表达式的化简（比如 0 * x）只在 x 没有副作用、不会出错时才做
+ */
+public class Folding {
+    private final Ast ast;
+    // NEG、BINARY 节点是否没有副作用、不会出错，按节点编号记录，节点在这里新建时写入
+    private boolean[] pure = new boolean[256];
+
+    public Folding(Ast ast) {
+        this.ast = ast;
+    }
+
+    /**
+     * 取负，token 是负号
+     */
+    public int neg(int token, int operand) {
+        switch (ast.kind(operand)) {
+            case Ast.PUSH:
+                return push(token, -value(operand));
+            case Ast.NEG:
+                // -(-x) => x
+                return detach(ast.first(operand));
+            default: {
+                int node = ast.add(Ast.NEG, token, 0, operand);
+                setPure(node, isPure(operand));
+                return node;
+            }
+        }
+    }
+
+    /**
+     * 二元运算，operator 是运算符的 token
+     */
+    public int binary(int operator, TokenType ty, int left, int right) {
+        if (isConstant(left) && isConstant(right)) {
+            long l = value(left), r = value(right);
+            switch (ty) {
+                case PLUS:
+                    return push(operator, l + r);
+                case MINUS:
+                    return push(operator, l - r);
+                case MUL:
+                    return push(operator, l * r);
+                default:
+                    if (r != 0 && !(l == Long.MIN_VALUE && r == -1))
+                        return push(operator, l / r);
+                    return add(operator, ty, left, right);
+            }
+        }
+        switch (ty) {
+            case PLUS:
+                // x + 0 => x，0 + x => x
+                if (isConstant(right, 0))
+                    return detach(left);
+                if (isConstant(left, 0))
+                    return detach(right);
+                break;
+            case MINUS:
+                // x - 0 => x
+                if (isConstant(right, 0))
+                    return detach(left);
+                break;
+            case MUL:
+                // x * 1 => x，1 * x => x，x * 0 => 0，0 * x => 0
+                if (isConstant(right, 1))
+                    return detach(left);
+                if (isConstant(left, 1))
+                    return detach(right);
+                if (isConstant(right, 0) && isPure(left) || isConstant(left, 0) && isPure(right))
+                    return push(operator, 0);
+                break;
+            default:
+                // x / 1 => x
+                if (isConstant(right, 1))
+                    return detach(left);
+                break;
+        }
+        if (isConstant(right)) {
+            int folded = reassociate(operator, ty, left, value(right));
+            if (folded >= 0)
+                return folded;
+        }
+        return add(operator, ty, left, right);
+    }
+
+    /**
+     * 把 (x ± a) ± b 合成 x + (±a ± b)，(x * a) * b 合成 x * (a * b)，
+     * 加法和乘法里常量也可以在左边：(a + x) + b、(a * x) * b。
+     * 在回绕的整数上这样结合不改变结果，也不改变 x 的求值
+     *
+     * @return 不能合并时返回 -1
+     */
+    private int reassociate(int operator, TokenType ty, int left, long b) {
+        if (ast.kind(left) != Ast.BINARY)
+            return -1;
+        TokenType inner = TokenType.values()[ast.data(left)];
+        int first = ast.first(left);
+        int second = ast.next(first);
+        int x;
+        long a;
+        if (isConstant(second)) {
+            x = first;
+            a = value(second);
+        } else if (isConstant(first) && (inner == TokenType.PLUS || inner == TokenType.MUL)) {
+            x = second;
+            a = value(first);
+        } else {
+            return -1;
+        }
+        if (isAdditive(ty) && isAdditive(inner)) {
+            long sum = (inner == TokenType.PLUS ? a : -a) + (ty == TokenType.PLUS ? b : -b);
+            return binary(operator, TokenType.PLUS, detach(x), push(operator, sum));
+        }
+        if (ty == TokenType.MUL && inner == TokenType.MUL) {
+            return binary(operator, TokenType.MUL, detach(x), push(operator, a * b));
+        }
+        return -1;
+    }
+
+    private int add(int operator, TokenType ty, int left, int right) {
+        int node = ast.add(Ast.BINARY, operator, ty.ordinal(), left, right);
+        // 除数不是非零常量时可能除以 0，不能丢掉
+        boolean safe = ty != TokenType.DIV || isConstant(right) && value(right) != 0;
+        setPure(node, safe && isPure(left) && isPure(right));
+        return node;
+    }
+
+    private int push(int token, long value) {
+        return ast.add(Ast.PUSH, token, ast.addConstant(value));
+    }
+
+    /**
+     * 从原来的父节点里取出 node，让它可以作为别的节点的子节点
+     */
+    private int detach(int node) {
+        ast.setNext(node, -1);
+        return node;
+    }
+
+    private boolean isConstant(int node) {
+        return ast.kind(node) == Ast.PUSH;
+    }
+
+    private boolean isConstant(int node, long value) {
+        return isConstant(node) && value(node) == value;
+    }
+
+    private long value(int node) {
+        return ast.constant(ast.data(node));
+    }
+
+    private static boolean isAdditive(TokenType ty) {
+        return ty == TokenType.PLUS || ty == TokenType.MINUS;
+    }
+
+    private boolean isPure(int node) {
+        switch (ast.kind(node)) {
+            case Ast.PUSH:
+            case Ast.LOAD:
+            case Ast.STRING:
+                return true;
+            case Ast.NEG:
+            case Ast.BINARY:
+                return pure[node];
+            default:
+                // 函数调用、赋值
+                return false;
+        }
+    }
+
+    private void setPure(int node, boolean value) {
+        if (node >= pure.length) {
+            pure = java.util.Arrays.copyOf(pure, Math.max(pure.length * 2, node + 1));
+        }
+        pure[node] = value;
+    }
+}
@@ -1,41 +1,83 @@
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class FunctionTable {
-    List<Instruction> instructions;
+    CodeBuffer code;
     List<Token> params;
-    String name;
+    // 函数名在 SymbolPool 里的编号
+    int name;
     TokenType tokenType;
     int pos;
     int paramSoltNum;
+    // 出现过的最多同时存在的局部变量个数，见 getVarSoltNum
     int varSoltNum;
+    // 当前占着位置的局部变量个数，也就是下一个局部变量的位置
+    int liveVarSoltNum;
     int deep;
-    /** 符号表 */
-    List<SymbolEntry> symbolEntries;
-    public FunctionTable(String name,int pos,TokenType tokenType) {
+    /** 符号表，参数在前，局部变量在后，离开语句块时从末尾弹出 */
+    SymbolStore symbols;
+    // 名字 -> 这个名字在 symbols 里最后出现、也就是最内层的下标，Table.get 按名字找的总是它
+    Map<Integer,Integer> innerIndex;
+    // 和 symbols 一一对应：被这个符号遮住的同名符号的下标，没有时是 -1。离开语句块时靠它恢复 innerIndex
+    IntStack shadowed;
+    // 参数类型，签名分析完时由 sealParams() 固定，之后函数体里的局部变量不会影响它
+    List<TokenType> paramTypes;
+    public FunctionTable(int name,int pos,TokenType tokenType) {
+        this(name,pos,tokenType,new CodeBuffer());
+    }
+
+    public FunctionTable(int name,int pos,TokenType tokenType,CodeBuffer code) {
         this.name=name;//main 这种
         this.pos=pos;
-        this.instructions = new ArrayList<>();
+        this.code = code;
         this.params=new ArrayList<>();
-        this.symbolEntries=new ArrayList<>();
+        this.symbols=new SymbolStore();
+        this.innerIndex=new HashMap<>();
+        this.shadowed=new IntStack();
         this.paramSoltNum=0;
         this.varSoltNum=0;
+        this.liveVarSoltNum=0;
         this.tokenType=tokenType;
     }
 
-    public List<Instruction>  getInstructions(){
-        return this.instructions;
+    public InstructionBuffer getInstructions(){
+        return this.code.getInstructions();
+    }
+
+    public CodeBuffer getCode() {
+        return code;
     }
 
-    public List<SymbolEntry> getSymbolEntries() {
-        return symbolEntries;
+    public SymbolStore getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * 签名分析完之后记下参数类型
+     * 其他函数（可能在别的线程里）只通过 getParamTypes() 读取，不再遍历 symbols
+     */
+    public void sealParams() {
+        List<TokenType> types=new ArrayList<>();
+        for (int i=0;i<symbols.size();i++){
+            if(symbols.nameType(i)==NameType.Params){
+                types.add(symbols.tokenType(i));
+            }
+            else break;
+        }
+        this.paramTypes=types;
+    }
+
+    public List<TokenType> getParamTypes() {
+        return paramTypes;
     }
 
     public TokenType getTokenType() {
         return tokenType;
     }
 
-    public String getName() {
+    public int getName() {
         return name;
     }
 
@@ -48,7 +90,7 @@ public class FunctionTable {
     }
 
     public int getVarSoltNum() {
-        return varSoltNum;
+        return Math.max(varSoltNum,liveVarSoltNum);
     }
 
     public int getReturnSoltNum() {
@@ -65,24 +107,59 @@ public class FunctionTable {
         this.tokenType = tokenType;
     }
 
-    public void addSymbolEntry(SymbolEntry symbolEntry) {
-        this.symbolEntries.add(symbolEntry);
-        if(symbolEntry.getNameType()== NameType.Params)
+    /**
+     * @return 名字在 symbols 里最内层的下标，没有时返回 -1
+     */
+    public int indexOf(int name) {
+        Integer index=innerIndex.get(name);
+        return index==null ? -1 : index;
+    }
+
+    /**
+     * 添加一个参数或局部变量，位置在这里一次分配好：
+     * 参数按声明顺序编号；局部变量的编号是当时占着位置的局部变量个数，离开语句块后空出的位置会被后面的变量重用
+     *
+     * @return 符号在 symbols 里的下标
+     */
+    public int addSymbol(int name, NameType nameType, TokenType tokenType, int deep, boolean isConstant, boolean isInitialized) {
+        int slot=nameType==NameType.Params ? this.paramSoltNum : this.liveVarSoltNum;
+        int index=this.symbols.add(name,nameType,tokenType,deep,isConstant,isInitialized,slot);
+        Integer outer=this.innerIndex.put(name,index);
+        this.shadowed.push(outer==null ? -1 : outer);
+        if(nameType== NameType.Params)
             this.paramSoltNum++;
-        else{
-            int currentVarSoltNum=this.symbolEntries.size()-this.paramSoltNum;
-            if(currentVarSoltNum>this.varSoltNum)
-                this.varSoltNum=currentVarSoltNum;
-        }
+        else
+            this.liveVarSoltNum++;
+        return index;
+    }
+
+    /**
+     * 收回最后一个符号的位置，用于值在编译期已知、用到的地方都直接写成 push 的局部常量
+     * 位置还没有被用过，所以它不会计入 loc_slots
+     */
+    public void releaseLastSlot() {
+        int index=symbols.size()-1;
+        symbols.setSlot(index,-1);
+        this.liveVarSoltNum--;
     }
 
     public void outDeep(int deep) {
-        int i=symbolEntries.size()-1;
+        int i=symbols.size()-1;
         for(;i>=0;i--){
-            if (symbolEntries.get(i).getNameType()==NameType.Params)
+            if (symbols.nameType(i)==NameType.Params)
                 return;
-            if(symbolEntries.get(i).getDeep()==deep)
-                symbolEntries.remove(i);
+            if(symbols.deep(i)==deep){
+                // 符号按栈的顺序弹出，弹出的总是同名里最内层的那个，外层的重新露出来
+                int outer=shadowed.pop();
+                if(outer<0)
+                    innerIndex.remove(symbols.name(i));
+                else
+                    innerIndex.put(symbols.name(i),outer);
+                this.varSoltNum=Math.max(this.varSoltNum,this.liveVarSoltNum);
+                if(symbols.slot(i)>=0)
+                    this.liveVarSoltNum--;
+                symbols.truncate(i);
+            }
             else break;
         }
     }
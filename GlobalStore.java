@@ -0,0 +1,110 @@
+/**
+ * 按列存放的全局表，第 i 项就是生成文件里的第 i 个全局项
+ * 每一项记下名字（字符串字面量就是它的内容）在 SymbolPool 里的编号、token 类型，
+ * 以及只有一部分项才有的种类、变量类型和是否常量，不为每一项保留一个 Token
+ */
+public class GlobalStore {
+    private static final NameType[] NAME_TYPES = NameType.values();
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    // nameTypes、tys 里表示没有设置
+    private static final byte NONE = -1;
+
+    private final SymbolPool pool;
+
+    private int[] names = new int[64];
+    private byte[] tokenTypes = new byte[64];
+    private byte[] nameTypes = new byte[64];
+    private byte[] tys = new byte[64];
+    private boolean[] constants = new boolean[64];
+    private int size = 0;
+
+    public GlobalStore(SymbolPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return 新全局项的编号
+     */
+    public int add(int name, TokenType tokenType) {
+        if (size == names.length) {
+            grow();
+        }
+        names[size] = name;
+        tokenTypes[size] = (byte) tokenType.ordinal();
+        nameTypes[size] = NONE;
+        tys[size] = NONE;
+        constants[size] = false;
+        return size++;
+    }
+
+    /**
+     * 带上种类、变量类型和是否常量，ty 可以为 null
+     */
+    public int add(int name, TokenType tokenType, boolean isConstant, NameType nameType, TokenType ty) {
+        int id = add(name, tokenType);
+        nameTypes[id] = (byte) nameType.ordinal();
+        tys[id] = ty == null ? NONE : (byte) ty.ordinal();
+        constants[id] = isConstant;
+        return id;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = java.util.Arrays.copyOf(names, capacity);
+        tokenTypes = java.util.Arrays.copyOf(tokenTypes, capacity);
+        nameTypes = java.util.Arrays.copyOf(nameTypes, capacity);
+        tys = java.util.Arrays.copyOf(tys, capacity);
+        constants = java.util.Arrays.copyOf(constants, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int name(int i) {
+        return names[i];
+    }
+
+    public TokenType tokenType(int i) {
+        return TOKEN_TYPES[tokenTypes[i]];
+    }
+
+    /**
+     * @return 没有设置时返回 null
+     */
+    public NameType nameType(int i) {
+        return nameTypes[i] == NONE ? null : NAME_TYPES[nameTypes[i]];
+    }
+
+    /**
+     * @return 没有设置时返回 null
+     */
+    public TokenType ty(int i) {
+        return tys[i] == NONE ? null : TOKEN_TYPES[tys[i]];
+    }
+
+    public boolean isConstant(int i) {
+        return constants[i];
+    }
+
+    /**
+     * 名字或者字符串的内容
+     */
+    public String value(int i) {
+        return pool.name(names[i]);
+    }
+
+    /**
+     * 全局项占的字节数，函数名和字符串是内容的长度，int 变量是 8，其他是 -1
+     */
+    public int count(int i) {
+        NameType nameType = nameType(i);
+        if (nameType == NameType.String || nameType == NameType.Proc)
+            return value(i).length();
+        else {
+            if (ty(i) == TokenType.INT_KW)
+                return 8;
+            else return -1;
+        }
+    }
+}
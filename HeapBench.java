@@ -0,0 +1,52 @@
+import java.io.StringReader;
+
+/**
+ * 测符号表占用的堆：生成一个有 GLOBALS 个全局变量、main 里用到 STRINGS 个不同字符串字面量的程序，
+ * 先把 token 全部读进来，再分析，两次都在 GC 之后看已用的堆，差值就是分析完留下的 Table 占的内存
+ *
+ * 用法：java -Xmx4g HeapBench [全局变量个数] [字符串个数]
+ */
+public class HeapBench {
+    public static void main(String[] args) throws CompileError {
+        int globals = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int strings = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        String source = program(globals, strings);
+
+        TokenBuffer tokens = new TokenBuffer(new Tokenizer(new StreamStringIter(new StringReader(source))));
+        tokens.fillAll();
+        long before = usedAfterGc();
+        Table table = new Analyser(tokens).analyse();
+        long after = usedAfterGc();
+
+        System.out.printf("globals=%d strings=%d global entries=%d%n", globals, strings, table.getGlobal().size());
+        System.out.printf("table retained %.1f MB%n", (after - before) / 1024.0 / 1024.0);
+        // 保证测量时 tokens 和 table 都还活着
+        if (tokens.size() + table.getGlobal().size() == 0) {
+            System.out.println("empty");
+        }
+    }
+
+    /**
+     * 每个全局变量一行 let，main 里对每个字符串调用一次 putstr
+     */
+    static String program(int globals, int strings) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < globals; i++) {
+            sb.append("let g").append(i).append(": int = ").append(i).append(";\n");
+        }
+        sb.append("fn main() -> void {");
+        for (int i = 0; i < strings; i++) {
+            sb.append(" putstr(\"s").append(i).append("\");");
+        }
+        sb.append(" }\n");
+        return sb.toString();
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -93,7 +93,14 @@ public class Instruction {
     }
 
     public int getType() {
-        switch (this.opt) {
+        return typeOf(this.opt);
+    }
+
+    /**
+     * 指令在文件里的操作码
+     */
+    public static int typeOf(Operation opt) {
+        switch (opt) {
             case loca:
                 return 0xa;
             case arga:
@@ -134,6 +141,10 @@ public class Instruction {
                 return 0x1a;
             case call:
                 return 0x48;
+            case dup:
+                return 0x4;
+            case neg_i:
+                return 0x34;
             default:
                 return -1;
         }
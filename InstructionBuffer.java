@@ -0,0 +1,104 @@
+/**
+ * 按列存放的指令序列
+ * 每条指令只占 opcodes 里的一个字节（Operation 的序号）和 operands 里的一个 long，写入时不创建对象。
+ * 有没有操作数由指令本身决定，见 hasOperand；需要 Instruction 对象（比如打印）时用 get 临时生成
+ */
+public class InstructionBuffer {
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private byte[] opcodes = new byte[16];
+    private long[] operands = new long[16];
+    private int size = 0;
+
+    public void add(Operation opt) {
+        add(opt, 0);
+    }
+
+    public void add(Operation opt, long x) {
+        if (size == opcodes.length) {
+            opcodes = java.util.Arrays.copyOf(opcodes, size * 2);
+            operands = java.util.Arrays.copyOf(operands, size * 2);
+        }
+        opcodes[size] = (byte) opt.ordinal();
+        operands[size] = x;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Operation operation(int i) {
+        return OPERATIONS[opcodes[i]];
+    }
+
+    public long operand(int i) {
+        return operands[i];
+    }
+
+    public void setOperand(int i, long x) {
+        operands[i] = x;
+    }
+
+    /**
+     * 把第 i 条指令改写成另一条，优化时原地改写用
+     */
+    public void set(int i, Operation opt, long x) {
+        opcodes[i] = (byte) opt.ordinal();
+        operands[i] = x;
+    }
+
+    /**
+     * 丢掉下标 size 及以后的指令
+     */
+    public void truncate(int size) {
+        this.size = size;
+    }
+
+    /**
+     * 第 i 条指令在文件里的操作码，同 Instruction.getType()
+     */
+    public int type(int i) {
+        return Instruction.typeOf(operation(i));
+    }
+
+    /**
+     * 第 i 条指令的 Instruction 对象，只在需要对象的地方使用
+     */
+    public Instruction get(int i) {
+        Operation opt = operation(i);
+        return hasOperand(opt) ? new Instruction(opt, operands[i]) : new Instruction(opt);
+    }
+
+    /**
+     * 这种指令是否带操作数
+     */
+    public static boolean hasOperand(Operation opt) {
+        switch (opt) {
+            case loca:
+            case arga:
+            case globa:
+            case push:
+            case br_false:
+            case br_true:
+            case br:
+            case callname:
+            case stackalloc:
+            case call:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(get(i));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * 可以增长的 int 栈
+ * Analyser 和 Lowering 用它代替递归，多个字段的帧就连续压几个 int，用 get/set 按下标读写
+ */
+public class IntStack {
+    private int[] items = new int[64];
+    private int size = 0;
+
+    public void push(int value) {
+        if (size == items.length) {
+            items = java.util.Arrays.copyOf(items, size * 2);
+        }
+        items[size++] = value;
+    }
+
+    public int pop() {
+        return items[--size];
+    }
+
+    public int get(int index) {
+        return items[index];
+    }
+
+    public void set(int index, int value) {
+        items[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 弹出 size 以上的所有元素
+     */
+    public void truncate(int size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.Random;
+
+/**
+ * 比较关键字识别的两种写法：Keywords 的完美哈希，和原来 Tokenizer 里逐个 contentEquals 的 stringFindType。
+ * 输入是随机生成的一串单词，大部分是标识符，其余是关键字，和一般程序里的比例差不多。
+ * 原来的写法分两项：包括创建 String 的整条路径，和只算在已有 String 上比较的部分。
+ * 先热身，再各跑 ROUNDS 轮，输出每个单词平均用的纳秒数
+ *
+ * 用法：java KeywordBench [单词个数] [关键字所占的百分比]
+ */
+public class KeywordBench {
+    private static final int ROUNDS = 20;
+    private static final String[] KEYWORDS = {"fn", "let", "const", "as", "while", "if", "else", "return", "int", "void"};
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz_";
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int keywordPercent = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        StringBuilder[] words = words(count, keywordPercent, new Random(42));
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = words[i].toString();
+        }
+
+        // 两种写法的结果必须一样
+        for (StringBuilder word : words) {
+            if (Keywords.lookup(word) != stringFindType(word.toString())) {
+                System.err.println("mismatch: " + word);
+                System.exit(1);
+            }
+        }
+
+        // 热身至少几百万次，让两种写法都编译好
+        for (int i = 0; i < Math.max(5, 5000000 / count); i++) {
+            hashed(words);
+            compared(words);
+            compared(strings);
+        }
+        long hashedTime = 0;
+        long comparedTime = 0;
+        long stringTime = 0;
+        long sink = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += hashed(words);
+            hashedTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            sink += compared(words);
+            comparedTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            sink += compared(strings);
+            stringTime += System.nanoTime() - start;
+        }
+        double total = (double) count * ROUNDS;
+        System.out.printf("words=%d keywords=%d%% rounds=%d%n", count, keywordPercent, ROUNDS);
+        System.out.printf("Keywords.lookup: %.2f ns/word%n", hashedTime / total);
+        System.out.printf("stringFindType:  %.2f ns/word (%.2f without creating the String)%n",
+                comparedTime / total, stringTime / total);
+        System.out.println("checksum " + sink);
+    }
+
+    /**
+     * 和现在的 Tokenizer 一样直接在缓冲区上识别
+     */
+    private static long hashed(StringBuilder[] words) {
+        long sum = 0;
+        for (StringBuilder word : words) {
+            sum += Keywords.lookup(word).ordinal();
+        }
+        return sum;
+    }
+
+    /**
+     * 和原来的 Tokenizer 一样先得到 String 再识别
+     */
+    private static long compared(StringBuilder[] words) {
+        long sum = 0;
+        for (StringBuilder word : words) {
+            sum += stringFindType(word.toString()).ordinal();
+        }
+        return sum;
+    }
+
+    private static long compared(String[] words) {
+        long sum = 0;
+        for (String word : words) {
+            sum += stringFindType(word).ordinal();
+        }
+        return sum;
+    }
+
+    private static StringBuilder[] words(int count, int keywordPercent, Random random) {
+        StringBuilder[] words = new StringBuilder[count];
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(100) < keywordPercent) {
+                words[i] = new StringBuilder(KEYWORDS[random.nextInt(KEYWORDS.length)]);
+            } else {
+                int length = 1 + random.nextInt(12);
+                StringBuilder word = new StringBuilder(length);
+                for (int j = 0; j < length; j++) {
+                    word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+                }
+                words[i] = word;
+            }
+        }
+        return words;
+    }
+
+    // 原来 Tokenizer 里的写法，原样保留用来比较
+    private static TokenType stringFindType(String s){
+        if(s.contentEquals("fn")) return TokenType.FN_KW;
+        if(s.contentEquals("let")) return TokenType.LET_KW;
+        if(s.contentEquals("const")) return TokenType.CONST_KW;
+        if(s.contentEquals("as")) return TokenType.AS_KW;
+        if(s.contentEquals("while")) return TokenType.WHILE_KW;
+        if(s.contentEquals("if")) return TokenType.IF_KW;
+        if(s.contentEquals("else")) return TokenType.ELSE_KW;
+        if(s.contentEquals("return")) return TokenType.RETURN_KW;
+        if(s.contentEquals("int")) return TokenType.INT_KW;
+        if(s.contentEquals("void")) return TokenType.VOID_KW;
+        return TokenType.IDENT;
+    }
+}
@@ -0,0 +1,72 @@
+
+/**
+ * 关键字识别
+ * 用 (首字符, 尾字符, 长度) 算一个完美哈希，每个关键字独占一个槽，
+ * 命中槽之后只需要再逐字比较一次
+ */
+public final class Keywords {
+    private static final int SIZE = 16;
+    private static final String[] WORDS = new String[SIZE];
+    private static final TokenType[] TYPES = new TokenType[SIZE];
+    private static final String[] WORD_OF_TYPE = new String[TokenType.values().length];
+
+    static {
+        put("fn", TokenType.FN_KW);
+        put("let", TokenType.LET_KW);
+        put("const", TokenType.CONST_KW);
+        put("as", TokenType.AS_KW);
+        put("while", TokenType.WHILE_KW);
+        put("if", TokenType.IF_KW);
+        put("else", TokenType.ELSE_KW);
+        put("return", TokenType.RETURN_KW);
+        // put("break", TokenType.BREAK_KW);
+        // put("continue", TokenType.CONTINUE_KW);
+        put("int", TokenType.INT_KW);
+        put("void", TokenType.VOID_KW);
+    }
+
+    private Keywords() {
+    }
+
+    private static int slot(char first, char last, int length) {
+        return (first * 4 + last * 12 + length) & (SIZE - 1);
+    }
+
+    private static void put(String word, TokenType type) {
+        int slot = slot(word.charAt(0), word.charAt(word.length() - 1), word.length());
+        if (WORDS[slot] != null) {
+            throw new Error("keyword hash collision: " + word + " and " + WORDS[slot]);
+        }
+        WORDS[slot] = word;
+        TYPES[slot] = type;
+        WORD_OF_TYPE[type.ordinal()] = word;
+    }
+
+    /**
+     * 判断标识符是否是关键字
+     *
+     * @param s 标识符，不能为空
+     * @return 关键字对应的类型，不是关键字时返回 IDENT
+     */
+    public static TokenType lookup(CharSequence s) {
+        int length = s.length();
+        int slot = slot(s.charAt(0), s.charAt(length - 1), length);
+        String word = WORDS[slot];
+        if (word == null || word.length() != length) {
+            return TokenType.IDENT;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != s.charAt(i)) {
+                return TokenType.IDENT;
+            }
+        }
+        return TYPES[slot];
+    }
+
+    /**
+     * 获取关键字的原文，这些字符串都是常量，不会重复分配
+     */
+    public static String wordOf(TokenType type) {
+        return WORD_OF_TYPE[type.ordinal()];
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * 测分词速度：把整个文件读成 TokenBuffer，跑 ROUNDS 轮，取当前线程 CPU 时间最少的一轮，输出每秒多少百万个 token。
+ * 不给文件时生成一个约 8 MB 的程序，每个函数都有数字、标识符、关键字、带转义的字符串和双字符运算符
+ *
+ * 用法：java LexBench [源文件]
+ */
+public class LexBench {
+    private static final int ROUNDS = 60;
+    private static final int FUNCTIONS = 40000;
+
+    public static void main(String[] args) throws IOException, CompileError {
+        File file;
+        if (args.length > 0) {
+            file = new File(args[0]);
+        } else {
+            file = File.createTempFile("lexbench", ".c0");
+            file.deleteOnExit();
+            generate(file, FUNCTIONS);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long best = Long.MAX_VALUE;
+        int count = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = threads.getCurrentThreadCpuTime();
+            TokenBuffer tokens = new TokenBuffer(new Tokenizer(new MappedStringIter(file.getPath())));
+            tokens.fillAll();
+            best = Math.min(best, threads.getCurrentThreadCpuTime() - start);
+            count = tokens.size();
+        }
+        System.out.printf("%d bytes, %d tokens, best of %d: %.1f ms, %.1f Mtok/s%n",
+                file.length(), count, ROUNDS, best / 1e6, count / (best / 1e9) / 1e6);
+    }
+
+    private static void generate(File file, int functions) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < functions; i++) {
+                writer.write("fn f" + i + "(a: int, b_" + i + ": int) -> int {\n"
+                        + "    let x: int = a * 1234 + b_" + i + " / 7 - -3;\n"
+                        + "    if x >= 10 { x = x - 1; } else { putstr(\"hello\\n world\"); }\n"
+                        + "    while x != 0 { x = x - 1; }\n"
+                        + "    return x == 2;\n"
+                        + "}\n");
+            }
+        }
+    }
+}
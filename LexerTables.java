@@ -0,0 +1,209 @@
+/**
+ * 词法分析用的字符分类表和 DFA 转移表
+ * ASCII 字符直接查表得到类别，非 ASCII 字符才调用 Character 的 Unicode 判断。
+ * 转移表覆盖所有 token，包括多字符运算符（-> == != <= >=）和字符串里的转义
+ */
+public final class LexerTables {
+    // 字符类别
+    public static final int OTHER = 0;
+    public static final int SPACE = 1;
+    public static final int DIGIT = 2;
+    public static final int LETTER = 3;
+    // n r t，既是字母也是合法的转义字符
+    public static final int ESCAPE_LETTER = 4;
+    public static final int QUOTE = 5;
+    public static final int APOSTROPHE = 6;
+    public static final int BACKSLASH = 7;
+    public static final int PLUS = 8;
+    public static final int MINUS = 9;
+    public static final int STAR = 10;
+    public static final int SLASH = 11;
+    public static final int EQUAL = 12;
+    public static final int BANG = 13;
+    public static final int LESS = 14;
+    public static final int GREATER = 15;
+    public static final int COMMA = 16;
+    public static final int COLON = 17;
+    public static final int SEMICOLON = 18;
+    public static final int L_PAREN = 19;
+    public static final int R_PAREN = 20;
+    public static final int L_BRACE = 21;
+    public static final int R_BRACE = 22;
+    public static final int EOF = 23;
+    public static final int CLASSES = 24;
+
+    // 状态
+    public static final int START = 0;
+    public static final int NUMBER = 1;
+    public static final int IDENT = 2;
+    public static final int STRING = 3;
+    public static final int STRING_ESCAPE = 4;
+    public static final int STRING_END = 5;
+    private static final int S_PLUS = 6;
+    private static final int S_MINUS = 7;
+    private static final int S_ARROW = 8;
+    private static final int S_MUL = 9;
+    private static final int S_DIV = 10;
+    private static final int S_ASSIGN = 11;
+    private static final int S_EQ = 12;
+    private static final int S_BANG = 13;
+    private static final int S_NEQ = 14;
+    private static final int S_LT = 15;
+    private static final int S_LE = 16;
+    private static final int S_GT = 17;
+    private static final int S_GE = 18;
+    private static final int S_COMMA = 19;
+    private static final int S_COLON = 20;
+    private static final int S_SEMICOLON = 21;
+    private static final int S_L_PAREN = 22;
+    private static final int S_R_PAREN = 23;
+    private static final int S_L_BRACE = 24;
+    private static final int S_R_BRACE = 25;
+    private static final int STATES = 26;
+
+    // 没有转移
+    public static final int DEAD = -1;
+
+    // 读入字符时要做的事
+    public static final int KEEP_NONE = 0;
+    public static final int KEEP_DIGIT = 1;
+    public static final int KEEP_CHAR = 2;
+
+    /** ASCII 字符的类别 */
+    public static final byte[] CLASS = new byte[128];
+    /** NEXT[state * CLASSES + class] 是下一个状态 */
+    public static final int[] NEXT = new int[STATES * CLASSES];
+    /** 停在这个状态时得到的 token，null 表示不是接受状态 */
+    public static final TokenType[] ACCEPT = new TokenType[STATES];
+    /** 进入这个状态时怎样保存读入的字符 */
+    public static final byte[] KEEP = new byte[STATES];
+    /** 卡在非接受状态时，错误报在下一个字符上（否则报在上一个字符上） */
+    public static final boolean[] BLAME_NEXT = new boolean[STATES];
+
+    static {
+        // 字母、数字、空白和 Character 的判断保持一致
+        for (char ch = 0; ch < 128; ch++) {
+            if (Character.isWhitespace(ch))
+                CLASS[ch] = SPACE;
+            else if (Character.isDigit(ch))
+                CLASS[ch] = DIGIT;
+            else if (Character.isAlphabetic(ch) || ch == '_')
+                CLASS[ch] = LETTER;
+            else
+                CLASS[ch] = OTHER;
+        }
+        CLASS['n'] = ESCAPE_LETTER;
+        CLASS['r'] = ESCAPE_LETTER;
+        CLASS['t'] = ESCAPE_LETTER;
+        CLASS['"'] = QUOTE;
+        CLASS['\''] = APOSTROPHE;
+        CLASS['\\'] = BACKSLASH;
+        CLASS['+'] = PLUS;
+        CLASS['-'] = MINUS;
+        CLASS['*'] = STAR;
+        CLASS['/'] = SLASH;
+        CLASS['='] = EQUAL;
+        CLASS['!'] = BANG;
+        CLASS['<'] = LESS;
+        CLASS['>'] = GREATER;
+        CLASS[','] = COMMA;
+        CLASS[':'] = COLON;
+        CLASS[';'] = SEMICOLON;
+        CLASS['('] = L_PAREN;
+        CLASS[')'] = R_PAREN;
+        CLASS['{'] = L_BRACE;
+        CLASS['}'] = R_BRACE;
+
+        java.util.Arrays.fill(NEXT, DEAD);
+
+        // 数字
+        edge(START, DIGIT, NUMBER);
+        edge(NUMBER, DIGIT, NUMBER);
+        KEEP[NUMBER] = KEEP_DIGIT;
+        ACCEPT[NUMBER] = TokenType.UINT_LITERAL;
+
+        // 标识符和关键字，关键字在接受之后再查表区分
+        edge(START, LETTER, IDENT);
+        edge(START, ESCAPE_LETTER, IDENT);
+        edge(IDENT, LETTER, IDENT);
+        edge(IDENT, ESCAPE_LETTER, IDENT);
+        edge(IDENT, DIGIT, IDENT);
+        KEEP[IDENT] = KEEP_CHAR;
+        ACCEPT[IDENT] = TokenType.IDENT;
+
+        // 字符串，除了引号、反斜杠和文件结尾都留在串里
+        edge(START, QUOTE, STRING);
+        for (int c = 0; c < CLASSES; c++) {
+            if (c != QUOTE && c != BACKSLASH && c != EOF)
+                edge(STRING, c, STRING);
+        }
+        edge(STRING, BACKSLASH, STRING_ESCAPE);
+        edge(STRING_ESCAPE, BACKSLASH, STRING);
+        edge(STRING_ESCAPE, QUOTE, STRING);
+        edge(STRING_ESCAPE, APOSTROPHE, STRING);
+        edge(STRING_ESCAPE, ESCAPE_LETTER, STRING);
+        edge(STRING, QUOTE, STRING_END);
+        KEEP[STRING] = KEEP_CHAR;
+        KEEP[STRING_ESCAPE] = KEEP_CHAR;
+        KEEP[STRING_END] = KEEP_CHAR;
+        ACCEPT[STRING_END] = TokenType.STRING_LITERAL;
+        BLAME_NEXT[STRING] = true;
+        BLAME_NEXT[STRING_ESCAPE] = true;
+
+        // 运算符
+        single(PLUS, S_PLUS, TokenType.PLUS);
+        single(MINUS, S_MINUS, TokenType.MINUS);
+        edge(S_MINUS, GREATER, S_ARROW);
+        ACCEPT[S_ARROW] = TokenType.ARROW;
+        single(STAR, S_MUL, TokenType.MUL);
+        single(SLASH, S_DIV, TokenType.DIV);
+        single(EQUAL, S_ASSIGN, TokenType.ASSIGN);
+        edge(S_ASSIGN, EQUAL, S_EQ);
+        ACCEPT[S_EQ] = TokenType.EQ;
+        // 单独的 ! 不是 token
+        edge(START, BANG, S_BANG);
+        edge(S_BANG, EQUAL, S_NEQ);
+        ACCEPT[S_NEQ] = TokenType.NEQ;
+        single(LESS, S_LT, TokenType.LT);
+        edge(S_LT, EQUAL, S_LE);
+        ACCEPT[S_LE] = TokenType.LE;
+        single(GREATER, S_GT, TokenType.GT);
+        edge(S_GT, EQUAL, S_GE);
+        ACCEPT[S_GE] = TokenType.GE;
+        single(COMMA, S_COMMA, TokenType.COMMA);
+        single(COLON, S_COLON, TokenType.COLON);
+        single(SEMICOLON, S_SEMICOLON, TokenType.SEMICOLON);
+        single(L_PAREN, S_L_PAREN, TokenType.L_PAREN);
+        single(R_PAREN, S_R_PAREN, TokenType.R_PAREN);
+        single(L_BRACE, S_L_BRACE, TokenType.L_BRACE);
+        single(R_BRACE, S_R_BRACE, TokenType.R_BRACE);
+
+        // 不认识的字符报在它自己身上
+        BLAME_NEXT[START] = true;
+    }
+
+    private LexerTables() {
+    }
+
+    private static void edge(int from, int cls, int to) {
+        NEXT[from * CLASSES + cls] = to;
+    }
+
+    private static void single(int cls, int state, TokenType type) {
+        edge(START, cls, state);
+        ACCEPT[state] = type;
+    }
+
+    /**
+     * 非 ASCII 字符的类别，走 Character 的 Unicode 判断
+     */
+    public static int slowClassOf(char ch) {
+        if (Character.isWhitespace(ch))
+            return SPACE;
+        if (Character.isDigit(ch))
+            return DIGIT;
+        if (Character.isAlphabetic(ch))
+            return LETTER;
+        return OTHER;
+    }
+}
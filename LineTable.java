@@ -0,0 +1,46 @@
+
+/**
+ * 行首偏移表
+ * 第 i 行从 start(i) 开始，给定偏移时二分查找所在的行
+ */
+public class LineTable {
+    private int[] starts = new int[64];
+    // 第 0 行总是从 0 开始
+    private int count = 1;
+
+    /**
+     * 记录新一行的起始偏移，必须按递增顺序加入
+     */
+    public void add(int start) {
+        if (count == starts.length) {
+            int[] grown = new int[starts.length * 2];
+            System.arraycopy(starts, 0, grown, 0, count);
+            starts = grown;
+        }
+        starts[count++] = start;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int start(int line) {
+        return starts[line];
+    }
+
+    /**
+     * 获取偏移所在的行号
+     */
+    public int lineOf(int offset) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= offset)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+}
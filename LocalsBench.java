@@ -0,0 +1,46 @@
+/**
+ * 测局部变量很多时的编译时间：生成 FUNCTIONS 个函数，每个先声明 LOCALS 个局部变量，再逐个给它们赋值，
+ * 每次赋值都读两个局部变量，所以按名字查找的次数和局部变量个数成正比。编译 ROUNDS 轮，输出最快的一轮
+ *
+ * 用法：java LocalsBench [函数个数] [每个函数的局部变量个数]
+ */
+public class LocalsBench {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws CompileError {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int locals = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        String source = program(functions, locals);
+
+        long best = Long.MAX_VALUE;
+        int size = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            size = Compiler.compile(source, new Compiler.Options()).length;
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("functions=%d locals=%d source=%d bytes output=%d bytes%n",
+                functions, locals, source.length(), size);
+        System.out.printf("best of %d: %.1f ms%n", ROUNDS, best / 1e6);
+    }
+
+    static String program(int functions, int locals) {
+        StringBuilder sb = new StringBuilder();
+        for (int f = 0; f < functions; f++) {
+            sb.append("fn f").append(f).append("(a: int) -> int {");
+            for (int i = 0; i < locals; i++) {
+                sb.append(" let v").append(i).append(": int = ").append(i).append(";");
+            }
+            for (int i = 0; i < locals; i++) {
+                sb.append(" v").append(i).append(" = v").append(i).append(" + v").append(i * 7 % locals).append(";");
+            }
+            sb.append(" return a; }\n");
+        }
+        sb.append("fn main() -> void {");
+        for (int f = 0; f < functions; f++) {
+            sb.append(" putint(f").append(f).append("(1));");
+        }
+        sb.append(" }\n");
+        return sb.toString();
+    }
+}
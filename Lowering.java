@@ -0,0 +1,251 @@
+/**
+ * 把 Ast 翻译成指令
+ * 所有名字、地址在 Analyser 建树时就已经检查并解析好了，这里不会再出错
+ */
+public class Lowering {
+    private final Ast ast;
+
+    public Lowering(Ast ast) {
+        this.ast = ast;
+    }
+
+    /**
+     * 函数体的语句都生成完之后补一条 ret，再把跳转的 label 换成偏移
+     */
+    public void endFunction(CodeBuffer code) {
+        code.emit(Operation.ret);
+        code.resolve();
+    }
+
+    // 还没有处理完的节点，每帧两个 int：节点和状态。状态是下一个要处理的子节点，-1 表示没有了
+    private final IntStack stack = new IntStack();
+    // 每帧两个跳转目标的 label 编号，下标和帧对应，-1 表示没有
+    private final IntStack labels = new IntStack();
+    // 刚压入、还没开始处理的节点
+    private static final int START = -2;
+
+    private void push(int node) {
+        stack.push(node);
+        stack.push(START);
+        int frame = stack.size() / 2 - 1;
+        while (labels.size() < frame * 2 + 2) {
+            labels.push(-1);
+        }
+    }
+
+    private void pop() {
+        stack.truncate(stack.size() - 2);
+    }
+
+    /**
+     * 生成一条语句，嵌套的语句块用 stack 展开，不递归
+     */
+    public void lowerStatement(int root, CodeBuffer code) {
+        int base = stack.size();
+        push(root);
+        while (stack.size() > base) {
+            int top = stack.size() - 2;
+            int node = stack.get(top);
+            int state = stack.get(top + 1);
+            int frame = top / 2;
+            switch (ast.kind(node)) {
+                case Ast.BLOCK: {
+                    int child = state == START ? ast.first(node) : state;
+                    if (child < 0) {
+                        pop();
+                    } else {
+                        stack.set(top + 1, ast.next(child));
+                        push(child);
+                    }
+                    break;
+                }
+                case Ast.EXPR_STMT:
+                    lowerExpr(ast.first(node), code);
+                    pop();
+                    break;
+                case Ast.ASSIGN:
+                    lowerExpr(node, code);
+                    pop();
+                    break;
+                case Ast.RETURN:
+                    if (ast.first(node) >= 0) {
+                        code.emit(Operation.arga, 0);
+                        lowerExpr(ast.first(node), code);
+                        code.emit(Operation.store_64);
+                    }
+                    code.emit(Operation.ret);
+                    pop();
+                    break;
+                case Ast.IF: {
+                    // 条件不成立时跳到下一个分支 next，每个分支执行完跳到 end
+                    if (state == START) {
+                        labels.set(frame * 2, code.newLabel());
+                        labels.set(frame * 2 + 1, -1);
+                        state = ast.first(node);
+                    }
+                    int end = labels.get(frame * 2);
+                    int next = labels.get(frame * 2 + 1);
+                    if (next >= 0 && state >= 0) {
+                        code.branch(Operation.br, end);
+                        code.bind(next);
+                        labels.set(frame * 2 + 1, -1);
+                    }
+                    int arm = state;
+                    if (arm < 0) {
+                        if (next >= 0)
+                            code.bind(next);
+                        code.bind(end);
+                        pop();
+                    } else if (ast.kind(arm) == Ast.ARM) {
+                        int cond = ast.first(arm);
+                        next = code.newLabel();
+                        labels.set(frame * 2 + 1, next);
+                        code.branch(lowerCond(cond, code), next);
+                        stack.set(top + 1, ast.next(arm));
+                        push(ast.next(cond));
+                    } else {
+                        // else
+                        stack.set(top + 1, ast.next(arm));
+                        push(arm);
+                    }
+                    break;
+                }
+                case Ast.WHILE: {
+                    int cond = ast.first(node);
+                    if (state == START) {
+                        int start = code.newLabel();
+                        int end = code.newLabel();
+                        labels.set(frame * 2, start);
+                        labels.set(frame * 2 + 1, end);
+                        code.bind(start);
+                        code.branch(lowerCond(cond, code), end);
+                        stack.set(top + 1, -1);
+                        push(ast.next(cond));
+                    } else {
+                        code.branch(Operation.br, labels.get(frame * 2));
+                        code.bind(labels.get(frame * 2 + 1));
+                        pop();
+                    }
+                    break;
+                }
+                default:
+                    throw new Error("not a statement: " + ast.kind(node));
+            }
+        }
+    }
+
+    /**
+     * 写入比较的指令
+     *
+     * @return 条件不成立时跳转用的指令
+     */
+    private Operation lowerCond(int node, CodeBuffer code) {
+        int left = ast.first(node);
+        lowerExpr(left, code);
+        if (ast.data(node) == 0) {
+            return Operation.br_false;
+        }
+        lowerExpr(ast.next(left), code);
+        code.emit(Operation.cmp_i);
+        switch (TokenType.values()[ast.data(node)]) {
+            case EQ:
+                return Operation.br_true;
+            case NEQ:
+                return Operation.br_false;
+            case LT:
+                code.emit(Operation.set_lt);
+                return Operation.br_false;
+            case GT:
+                code.emit(Operation.set_gt);
+                return Operation.br_false;
+            case LE:
+                code.emit(Operation.set_gt);
+                return Operation.br_true;
+            default:
+                code.emit(Operation.set_lt);
+                return Operation.br_true;
+        }
+    }
+
+    /**
+     * 按后序生成表达式：先写节点自己的前缀，再依次处理子节点，最后写后缀
+     */
+    private void lowerExpr(int root, CodeBuffer code) {
+        int base = stack.size();
+        push(root);
+        while (stack.size() > base) {
+            int top = stack.size() - 2;
+            int node = stack.get(top);
+            int state = stack.get(top + 1);
+            if (state == START) {
+                switch (ast.kind(node)) {
+                    case Ast.NEG:
+                        code.emit(Operation.push, 0);
+                        break;
+                    case Ast.ASSIGN:
+                        emitAddress(ast.data(node), code);
+                        break;
+                    case Ast.CALL:
+                        code.emit(Operation.stackalloc, Ast.callReturnSlots(ast.data(node)));
+                        break;
+                    case Ast.LOAD:
+                        emitAddress(ast.data(node), code);
+                        code.emit(Operation.load_64);
+                        break;
+                    case Ast.PUSH:
+                        code.emit(Operation.push, ast.constant(ast.data(node)));
+                        break;
+                    case Ast.STRING:
+                        code.emit(Operation.push, ast.data(node));
+                        break;
+                    case Ast.BINARY:
+                        break;
+                    default:
+                        throw new Error("not an expression: " + ast.kind(node));
+                }
+                state = ast.first(node);
+            }
+            if (state >= 0) {
+                stack.set(top + 1, ast.next(state));
+                push(state);
+                continue;
+            }
+            switch (ast.kind(node)) {
+                case Ast.NEG:
+                    code.emit(Operation.sub_i);
+                    break;
+                case Ast.ASSIGN:
+                    code.emit(Operation.store_64);
+                    break;
+                case Ast.CALL: {
+                    int call = ast.data(node);
+                    code.emit(Ast.isCallname(call) ? Operation.callname : Operation.call, Ast.callId(call));
+                    break;
+                }
+                case Ast.BINARY:
+                    code.emit(binaryOperation(TokenType.values()[ast.data(node)]));
+                    break;
+                default:
+                    break;
+            }
+            pop();
+        }
+    }
+
+    private static Operation binaryOperation(TokenType ty) {
+        switch (ty) {
+            case PLUS:
+                return Operation.add_i;
+            case MINUS:
+                return Operation.sub_i;
+            case MUL:
+                return Operation.mul_i;
+            default:
+                return Operation.div_i;
+        }
+    }
+
+    private void emitAddress(int address, CodeBuffer code) {
+        code.emit(Ast.addressOperation(address), Ast.addressOffset(address));
+    }
+}
@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 把源文件整个映射进内存，直接在 UTF-8 字节上移动一个 int 指针
+ * 不会按行复制内容，行号只在需要位置的时候才去扫描
+ */
+public class MappedStringIter extends StringIter {
+    private final MappedByteBuffer buffer;
+    // 文件的字节数
+    private final int size;
+    // 文件末尾没有换行时补一个虚拟的 \n，和按行读入的结果保持一致
+    private final int end;
+
+    // 指向下一个要读取的字节
+    private int ptr = 0;
+
+    // 文件内容的 SHA-256，第一次用到时才计算
+    private byte[] hash;
+
+    // 懒惰建立的行首表，只扫描到 scanned 为止
+    private final LineTable lines = new LineTable();
+    private int scanned = 0;
+
+    /**
+     * posOf 上一次算出的位置，下一次在同一行、偏移更大时从这里接着数列号
+     * 字段都是 final，整个对象替换，不会读到一半更新的值
+     */
+    private static final class Cursor {
+        final int row;
+        final int offset;
+        final int col;
+
+        Cursor(int row, int offset, int col) {
+            this.row = row;
+            this.offset = offset;
+            this.col = col;
+        }
+    }
+
+    private Cursor cursor = new Cursor(-1, 0, 0);
+
+    public MappedStringIter(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("source file too large");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            this.size = (int) length;
+        }
+        if (size > 0 && byteAt(size - 1) != '\n' && byteAt(size - 1) != '\r') {
+            this.end = size + 1;
+        } else {
+            this.end = size;
+        }
+    }
+
+    /**
+     * 和 base 共用同一块映射，从偏移 from 开始读，偏移仍然是整个文件里的偏移
+     * from 必须是一个字符的开头。并行分词时每个线程各用一个
+     */
+    private MappedStringIter(MappedStringIter base, int from) {
+        this.buffer = base.buffer;
+        this.size = base.size;
+        this.end = base.end;
+        this.ptr = from;
+    }
+
+    public MappedStringIter slice(int from) {
+        return new MappedStringIter(this, from);
+    }
+
+    /**
+     * 文件的字节数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 文件内容的 SHA-256
+     */
+    public byte[] contentHash() {
+        if (hash == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(buffer.duplicate());
+                hash = digest.digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new Error(e);
+            }
+        }
+        return hash.clone();
+    }
+
+    // 偏移和 UTF-8 的对应关系
+    // 1.ASCII 字符占一个偏移
+    // 2.两字节、三字节序列各算一个字符，占满自己的字节
+    // 3.四字节序列拆成两个 UTF-16 字符，高位在序列开头，低位在序列第三个字节
+    // 4.不合法的字节各算一个 �
+    // 列号按字符数计算，这样和按行读入的 String 下标一致
+
+    public int byteAt(int i) {
+        return buffer.get(i) & 0xff;
+    }
+
+    private static boolean isContinuation(int b) {
+        return (b & 0xc0) == 0x80;
+    }
+
+    /**
+     * 以 i 开头的合法多字节序列的长度，不是合法序列返回 0
+     */
+    private int sequenceLength(int i) {
+        int b = byteAt(i);
+        int length;
+        if (b >= 0xc2 && b <= 0xdf)
+            length = 2;
+        else if (b >= 0xe0 && b <= 0xef)
+            length = 3;
+        else if (b >= 0xf0 && b <= 0xf4)
+            length = 4;
+        else
+            return 0;
+        if (i + length > size)
+            return 0;
+        for (int k = 1; k < length; k++) {
+            if (!isContinuation(byteAt(i + k)))
+                return 0;
+        }
+        return length;
+    }
+
+    /**
+     * 偏移 i 处的续字节属于哪个序列，返回序列开头，不属于任何序列返回 -1
+     */
+    private int sequenceStart(int i) {
+        for (int k = 1; k <= 3 && i - k >= 0; k++) {
+            int length = sequenceLength(i - k);
+            if (length > k)
+                return i - k;
+        }
+        return -1;
+    }
+
+    private boolean isCharStart(int i) {
+        if (i >= size || !isContinuation(byteAt(i)))
+            return true;
+        int start = sequenceStart(i);
+        return start < 0 || (i - start == 2 && sequenceLength(start) == 4);
+    }
+
+    /**
+     * 偏移 i 处字符占用的字节数，i 必须是一个字符的开头
+     */
+    private int width(int i) {
+        if (i >= size)
+            return 1;
+        int b = byteAt(i);
+        if (b < 0x80)
+            return 1;
+        if (isContinuation(b))
+            return sequenceStart(i) >= 0 ? 2 : 1;
+        int length = sequenceLength(i);
+        if (length == 0)
+            return 1;
+        return length == 4 ? 2 : length;
+    }
+
+    /**
+     * 解码偏移 i 处的字符，i 必须是一个字符的开头
+     */
+    private char charAt(int i) {
+        if (i >= size)
+            return '\n';
+        int b = byteAt(i);
+        if (b < 0x80)
+            return (char) b;
+        if (isContinuation(b)) {
+            int start = sequenceStart(i);
+            if (start < 0)
+                return '�';
+            return Character.lowSurrogate(codePoint(start, 4));
+        }
+        int length = sequenceLength(i);
+        if (length == 0)
+            return '�';
+        int codePoint = codePoint(i, length);
+        if (length == 4)
+            return Character.highSurrogate(codePoint);
+        return (char) codePoint;
+    }
+
+    private int codePoint(int start, int length) {
+        int codePoint = byteAt(start) & (0xff >> (length + 1));
+        for (int k = 1; k < length; k++) {
+            codePoint = (codePoint << 6) | (byteAt(start + k) & 0x3f);
+        }
+        return codePoint;
+    }
+
+    /**
+     * 把行首表扫描到 offset 为止
+     */
+    private void scanLines(int offset) {
+        int limit = Math.min(offset, size);
+        while (scanned < limit) {
+            int b = byteAt(scanned);
+            if (b == '\n' || (b == '\r' && (scanned + 1 >= size || byteAt(scanned + 1) != '\n'))) {
+                lines.add(scanned + 1);
+            }
+            scanned++;
+        }
+    }
+
+    /**
+     * 把字节偏移换算成行列
+     * 按偏移递增调用时（比如逐个输出 token）每次只数上一次之后的字节，不会重新扫描整行
+     */
+    @Override
+    public Pos posOf(int offset) {
+        scanLines(offset);
+        if (offset > size) {
+            // 越过了补上的虚拟 \n
+            return new Pos(lines.size(), 0);
+        }
+        int row = lines.lineOf(offset);
+        Cursor last = cursor;
+        int from;
+        int col;
+        if (last.row == row && last.offset <= offset) {
+            from = last.offset;
+            col = last.col;
+        } else {
+            from = lines.start(row);
+            col = 0;
+        }
+        for (int i = from; i < offset; i++) {
+            if (isCharStart(i))
+                col++;
+        }
+        cursor = new Cursor(row, offset, col);
+        return new Pos(row, col);
+    }
+
+    @Override
+    public int nextOffset() {
+        if (ptr >= end) {
+            throw new Error("advance after EOF");
+        }
+        return ptr + width(ptr);
+    }
+
+    @Override
+    public int previousOffset() {
+        if (ptr == 0) {
+            throw new Error("previous position from beginning");
+        }
+        return previousStart(ptr);
+    }
+
+    private int previousStart(int i) {
+        int j = i - 1;
+        while (j > 0 && !isCharStart(j)) {
+            j--;
+        }
+        return j;
+    }
+
+    @Override
+    public char nextChar() {
+        if (ptr >= end) {
+            return 0;
+        }
+        char ch = charAt(ptr);
+        ptr += width(ptr);
+        return ch;
+    }
+
+    @Override
+    public char peekChar() {
+        if (ptr >= end) {
+            return 0;
+        }
+        return charAt(ptr);
+    }
+
+    @Override
+    public Boolean isEOF() {
+        return ptr >= end;
+    }
+
+    @Override
+    public void unreadLast() {
+        ptr = previousStart(ptr);
+    }
+
+    @Override
+    public int currentOffset() {
+        return ptr;
+    }
+}
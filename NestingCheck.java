@@ -0,0 +1,87 @@
+/**
+ * 检查分析和生成都不依赖递归：生成很长、很深的程序逐个编译，出现 StackOverflowError 就以非 0 退出
+ * 编译放在一个栈只有 STACK_SIZE 的线程上跑，哪里重新变成按深度递归都会很快暴露出来
+ *
+ * 用法：java NestingCheck
+ */
+public class NestingCheck {
+    private static final long STACK_SIZE = 256 * 1024;
+    private static final int TERMS = 100000;
+    private static final int DEPTH = 10000;
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean[] ok = {true};
+        Thread thread = new Thread(null, () -> ok[0] = runAll(), "nesting-check", STACK_SIZE);
+        thread.start();
+        thread.join();
+        if (!ok[0]) {
+            System.exit(1);
+        }
+        System.out.println("ok");
+    }
+
+    private static boolean runAll() {
+        boolean ok = true;
+        ok &= check("terms", program(sum(TERMS)));
+        ok &= check("parens", program(repeat("(", DEPTH) + "1" + repeat(")", DEPTH)));
+        ok &= check("negations", program(repeat("-", TERMS) + "1"));
+        ok &= check("blocks", "fn main() -> void {" + repeat("{", DEPTH) + "putint(1);" + repeat("}", DEPTH) + "}");
+        ok &= check("ifs", "fn main() -> void {" + repeat("if 1 == 1 {", DEPTH) + "putint(1);" + repeat("}", DEPTH) + "}");
+        ok &= check("else-ifs", "fn main() -> void { let x: int = getint(); if x == 0 { putint(0); }"
+                + elseIfs(DEPTH) + " else { putint(-1); } }");
+        ok &= check("whiles", "fn main() -> void { let i: int = 0;" + repeat("while i < 1 {", DEPTH)
+                + "i = i + 1;" + repeat("}", DEPTH) + "}");
+        return ok;
+    }
+
+    /**
+     * 编译一个程序，折叠常量打开和关闭各一次
+     */
+    private static boolean check(String name, String source) {
+        for (boolean folding : new boolean[]{false, true}) {
+            try {
+                byte[] bytes = Compiler.compile(source, new Compiler.Options().setFolding(folding));
+                if (bytes.length == 0) {
+                    System.err.println(name + ": empty output");
+                    return false;
+                }
+            } catch (StackOverflowError e) {
+                System.err.println(name + (folding ? " (folding)" : "") + ": StackOverflowError");
+                return false;
+            } catch (CompileError e) {
+                System.err.println(name + ": " + e);
+                return false;
+            }
+        }
+        System.out.println(name + ": ok");
+        return true;
+    }
+
+    private static String program(String expr) {
+        return "fn main() -> void { let x: int = " + expr + "; putint(x); }";
+    }
+
+    private static String sum(int terms) {
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 1; i < terms; i++) {
+            sb.append(" + ").append(i % 10);
+        }
+        return sb.toString();
+    }
+
+    private static String elseIfs(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i < count; i++) {
+            sb.append(" else if x == ").append(i).append(" { putint(").append(i).append("); }");
+        }
+        return sb.toString();
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
@@ -1,4 +1,4 @@
 public enum Operation {
     loca,arga,globa,add_i,sub_i,mul_i,div_i,store_64,cmp_i,push, set_lt,br_false,
-    br_true,set_gt,br,ret,callname,load_64,stackalloc,call;
+    br_true,set_gt,br,ret,callname,load_64,stackalloc,call,dup,neg_i;
 }
@@ -22,20 +22,19 @@ public class OutPutBinary {
         List<Byte> version=int2bytes(4,this.version);
         output.addAll(version);
 
-        List<Token> globals=table.getGlobal();
+        GlobalStore globals=table.getGlobal();
         //globals.count
         List<Byte> global_count=int2bytes(4,globals.size());
         output.addAll(global_count);
 
         for(int i=0;i<globals.size();i++){
-            Token global=globals.get(i);
-            List<Byte> global_is_const=int2bytes(1,(global.isIs_const() ? 1:0));
+            List<Byte> global_is_const=int2bytes(1,(globals.isConstant(i) ? 1:0));
             output.addAll(global_is_const);
 
-            List<Byte> global_value_count=int2bytes(4,global.getCount());
+            List<Byte> global_value_count=int2bytes(4,globals.count(i));
             output.addAll(global_value_count);
 
-            List<Byte> global_value=getValueByte(global);
+            List<Byte> global_value=getValueByte(globals,i);
             output.addAll(global_value);
         }
 
@@ -62,33 +61,31 @@ public class OutPutBinary {
             List<Byte> loc_slots=int2bytes(4,functionTable.getVarSoltNum());
             output.addAll(loc_slots);
 
-            List<Instruction> instructions=functionTable.getInstructions();
+            InstructionBuffer instructions=functionTable.getInstructions();
             //body_count
             List<Byte> body_count=int2bytes(4,instructions.size());
             output.addAll(body_count);
 
-            //instructions
-            for(Instruction instruction:instructions){
+            //instructions，直接从缓冲区写出，不为每条指令创建对象
+            for(int j=0;j<instructions.size();j++){
                 //type
-                List<Byte> type=int2bytes(1,instruction.getType());
-                output.addAll(type);
-                if(instruction.getLength()==1){
-                    List<Byte>  x;
-                    if(instruction.getType()==1)
-                        x=long2bytes(8,instruction.getX());
-                    else x=long2bytes(4,instruction.getX());
-                    output.addAll(x);
+                int type=instructions.type(j);
+                append(1,type);
+                if(InstructionBuffer.hasOperand(instructions.operation(j))){
+                    if(type==1)
+                        append(8,instructions.operand(j));
+                    else append(4,instructions.operand(j));
                 }
             }
         }
         return output;
     }
 
-    private List<Byte> getValueByte(Token global) {
-        if(global.getNameType()== NameType.Proc||global.getNameType()==NameType.String)
-            return String2bytes(global.getValueString());
+    private List<Byte> getValueByte(GlobalStore globals, int i) {
+        if(globals.nameType(i)== NameType.Proc||globals.nameType(i)==NameType.String)
+            return String2bytes(globals.value(i));
         else {
-            if(global.getTokenType()== TokenType.INT_KW)
+            if(globals.tokenType(i)== TokenType.INT_KW)
                 return long2bytes(8,0);
             else return new ArrayList<>();
         }
@@ -102,6 +99,16 @@ public class OutPutBinary {
         return AB;
     }
 
+    /**
+     * 把 target 的低 length 个字节按大端序直接追加到 output
+     */
+    private void append(int length, long target) {
+        int start = 8*(length-1);
+        for(int i = 0 ; i < length; i++){
+            output.add((byte) (( target >> ( start - i * 8 )) & 0xFF ));
+        }
+    }
+
     private List<Byte> long2bytes(int length, long target) {
         ArrayList<Byte> bytes = new ArrayList<>();
         int start = 8*(length-1);
@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 按函数并行编译
+ * 第一遍在当前线程里分析全局声明和所有函数签名，跳过函数体（见 Analyser.analyseSignatures），
+ * 之后每个函数体在 ForkJoinPool 上用各自的 Analyser 和 Table.fork() 编译，指令写进各自的 FunctionTable。
+ * 每个函数体看到的符号和顺序编译到那里时完全相同，函数的顺序也不变，所以生成的字节和顺序编译一样。
+ *
+ * 有任何错误，或者某个函数体依赖前面函数体对全局变量的赋值时，整个程序改为顺序编译，
+ * 报出的错误也就和顺序编译时一样
+ */
+public class ParallelAnalyser {
+    // 小于这个大小的文件直接顺序编译
+    public static final int THRESHOLD = 256 * 1024;
+
+    private final ForkJoinPool forkJoinPool;
+    // 见 Analyser.setReachable
+    private boolean[] reachable;
+    // 见 Analyser.setFolding
+    private boolean folding = false;
+
+    public ParallelAnalyser() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelAnalyser(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public void setReachable(boolean[] reachable) {
+        this.reachable = reachable;
+    }
+
+    public void setFolding(boolean folding) {
+        this.folding = folding;
+    }
+
+    /**
+     * 判断这个输入是否值得用公共线程池并行编译
+     */
+    public static boolean worthwhile(TokenBuffer tokens) {
+        StringIter source = tokens.getSource();
+        return ForkJoinPool.getCommonPoolParallelism() > 1
+                && source instanceof MappedStringIter && ((MappedStringIter) source).size() >= THRESHOLD;
+    }
+
+    public Table analyse(TokenBuffer tokens) throws CompileError {
+        try {
+            tokens.fillAll();
+        } catch (TokenizeError e) {
+            // 分词错误之前可能还有语义错误，交给顺序编译决定先报哪个
+            tokens.complete(e);
+            return sequential(tokens);
+        }
+
+        Analyser signatures = new Analyser(tokens.fork(0));
+        signatures.setReachable(reachable);
+        signatures.setFolding(folding);
+        List<Analyser.Body> bodies;
+        try {
+            bodies = signatures.analyseSignatures();
+        } catch (CompileError e) {
+            return sequential(tokens);
+        }
+        Table table = signatures.getTable();
+
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+        for (Analyser.Body body : bodies) {
+            Analyser analyser = new Analyser(tokens.fork(body.start), table.fork(body.function, body.symbols));
+            analyser.setFolding(folding);
+            tasks.add(forkJoinPool.submit(() -> analyseBody(analyser, body)));
+        }
+
+        boolean ok = true;
+        for (ForkJoinTask<Boolean> task : tasks) {
+            if (!task.join()) {
+                ok = false;
+                for (ForkJoinTask<Boolean> rest : tasks) {
+                    rest.cancel(false);
+                }
+                break;
+            }
+        }
+        if (!ok) {
+            return sequential(tokens);
+        }
+        return table;
+    }
+
+    private Table sequential(TokenBuffer tokens) throws CompileError {
+        Analyser analyser = new Analyser(tokens.fork(0));
+        analyser.setReachable(reachable);
+        analyser.setFolding(folding);
+        return analyser.analyse();
+    }
+
+    /**
+     * @return 是否编译成功
+     */
+    private static boolean analyseBody(Analyser analyser, Analyser.Body body) {
+        try {
+            analyser.analyseBody(body);
+            return true;
+        } catch (Table.Unresolved | CompileError e) {
+            // 顺序编译会得到同样的结果或错误；别的异常是编译器本身的问题，照常抛出
+            return false;
+        }
+    }
+}
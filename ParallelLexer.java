@@ -0,0 +1,137 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 大文件的并行分词
+ * 先粗扫一遍字节，只跟踪字符串和花括号深度，在最外层的 ; 或 } 之后切块，
+ * 每块在 ForkJoinPool 上各用一个 Tokenizer 分词，最后按顺序拼回同一个 TokenBuffer。
+ * 切点之后总是一个新 token 的开头，所以拼出来的 token 流（包括偏移和名字编号）
+ * 和顺序分词完全相同
+ */
+public class ParallelLexer {
+    // 小于这个大小的文件直接顺序分词
+    public static final int THRESHOLD = 1 << 20;
+    // 每块至少这么多字节
+    private static final int MIN_CHUNK = 256 * 1024;
+
+    private final ForkJoinPool forkJoinPool;
+
+    public ParallelLexer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * 判断这个输入是否值得用公共线程池并行分词
+     */
+    public static boolean worthwhile(StringIter iter) {
+        return ForkJoinPool.getCommonPoolParallelism() > 1
+                && iter instanceof MappedStringIter && ((MappedStringIter) iter).size() >= THRESHOLD;
+    }
+
+    /**
+     * 分词整个文件
+     *
+     * @return 已经填好的 token 流，分词错误会在读到出错位置时抛出
+     */
+    public TokenBuffer lex(MappedStringIter source) {
+        Tokenizer tokenizer = new Tokenizer(source);
+        TokenBuffer tokens = new TokenBuffer(tokenizer);
+
+        int chunkSize = Math.max(MIN_CHUNK, source.size() / (forkJoinPool.getParallelism() * 4));
+        List<Integer> bounds = split(source, chunkSize);
+
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        for (int k = 0; k + 1 < bounds.size(); k++) {
+            int from = bounds.get(k);
+            int to = bounds.get(k + 1);
+            boolean last = k + 2 == bounds.size();
+            tasks.add(forkJoinPool.submit(() -> lexChunk(source, from, to, last)));
+        }
+
+        TokenizeError error = null;
+        for (ForkJoinTask<Chunk> task : tasks) {
+            Chunk chunk = task.join();
+            tokens.addAll(chunk.tokens);
+            if (chunk.error != null) {
+                // 出错之后的块不再需要
+                error = chunk.error;
+                for (ForkJoinTask<Chunk> rest : tasks) {
+                    rest.cancel(false);
+                }
+                break;
+            }
+        }
+        tokens.complete(error);
+        return tokens;
+    }
+
+    private static class Chunk {
+        TokenBuffer tokens;
+        TokenizeError error;
+    }
+
+    private static Chunk lexChunk(MappedStringIter source, int from, int to, boolean last) {
+        MappedStringIter iter = source.slice(from);
+        Tokenizer tokenizer = new Tokenizer(iter);
+        Chunk chunk = new Chunk();
+        chunk.tokens = new TokenBuffer(tokenizer);
+        try {
+            if (last) {
+                // 最后一块一直读到 EOF
+                chunk.tokens.fillAll();
+            } else {
+                while (iter.currentOffset() < to) {
+                    tokenizer.nextInto(chunk.tokens);
+                }
+            }
+        } catch (TokenizeError e) {
+            chunk.error = e;
+        }
+        return chunk;
+    }
+
+    /**
+     * 在最外层的 ; 和 } 之后找切点，相邻切点至少隔 chunkSize 字节
+     * 多字节的 UTF-8 序列里不会出现这些 ASCII 字节，所以可以直接扫字节
+     *
+     * @return 各块的起点，最后一个元素是文件大小
+     */
+    private static List<Integer> split(MappedStringIter source, int chunkSize) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int size = source.size();
+        int depth = 0;
+        boolean inString = false;
+        int next = chunkSize;
+        for (int i = 0; i < size; i++) {
+            int b = source.byteAt(i);
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{') {
+                depth++;
+            } else if (b == '}' || b == ';') {
+                if (b == '}' && depth > 0) {
+                    depth--;
+                }
+                if (depth == 0 && i + 1 >= next && i + 1 < size) {
+                    bounds.add(i + 1);
+                    next = i + 1 + chunkSize;
+                }
+            }
+        }
+        bounds.add(size);
+        return bounds;
+    }
+}
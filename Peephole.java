@@ -0,0 +1,254 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 窥孔优化，对一个函数的指令做原地改写
+ * 顺序读入每条指令，写到输出末尾后用各条规则去匹配输出末尾的几条指令，匹配上就当场替换，
+ * 所以一条规则的结果还能接着被别的规则匹配。输出不会比输入长，直接写回同一个 InstructionBuffer。
+ * 跳转在改写期间先换成目标的旧下标，一遍做完后再按新下标算回偏移；
+ * 窗口中间（第一条以外）的指令不能是跳转目标，否则改写会改变跳进来时的行为。
+ * 一遍有改动就再做一遍，直到没有改动
+ */
+public class Peephole {
+    public enum Rule {
+        // push 0; push c; sub_i  =>  push -c
+        NEG_CONST,
+        // push 0; 地址; load_64; sub_i  =>  地址; load_64; neg_i
+        NEG_LOAD,
+        // 地址; push c; store_64; ...; 同一地址; load_64  =>  地址; push c; store_64; ...; push c
+        // 中间的 ... 只能是不读写变量的 push、地址、stackalloc，最多 STORE_LOAD_GAP 条
+        STORE_LOAD,
+        // 地址; load_64; 同一地址; load_64  =>  地址; load_64; dup
+        LOAD_LOAD,
+        // 跳到下一条指令的 br，比如 else 分支为空时 then 分支末尾的 br
+        BRANCH_NEXT,
+        // ret、br 之后、不是跳转目标的指令，比如 return 语句后面函数末尾补的 ret
+        UNREACHABLE;
+
+        /**
+         * 命令行里用的名字，比如 neg-const
+         */
+        public String optionName() {
+            return name().toLowerCase().replace('_', '-');
+        }
+
+        /**
+         * @return 没有这个名字时返回 null
+         */
+        public static Rule ofOptionName(String name) {
+            for (Rule rule : values()) {
+                if (rule.optionName().equals(name))
+                    return rule;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 每条规则一共删掉了多少条指令
+     */
+    public static class Report {
+        private final long[] removed = new long[Rule.values().length];
+
+        public long get(Rule rule) {
+            return removed[rule.ordinal()];
+        }
+
+        public long total() {
+            long sum = 0;
+            for (long count : removed)
+                sum += count;
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Rule rule : Rule.values()) {
+                sb.append(rule.optionName()).append(": ").append(get(rule)).append('\n');
+            }
+            return sb.append("total: ").append(total()).toString();
+        }
+    }
+
+    // STORE_LOAD 允许 store_64 和再次读取之间隔开的指令数，限制住每次匹配往回看的长度
+    private static final int STORE_LOAD_GAP = 8;
+
+    private final boolean[] enabled = new boolean[Rule.values().length];
+    private final Report report;
+
+    // 每一遍用的临时数组，按指令数增长，在函数之间复用
+    private boolean[] target = new boolean[0];
+    private boolean[] outTarget = new boolean[0];
+    private int[] newIndex = new int[0];
+
+    /**
+     * @param report 为 null 时不统计
+     */
+    public Peephole(Set<Rule> rules, Report report) {
+        for (Rule rule : rules)
+            enabled[rule.ordinal()] = true;
+        this.report = report == null ? new Report() : report;
+    }
+
+    public static Set<Rule> allRules() {
+        return EnumSet.allOf(Rule.class);
+    }
+
+    public void optimize(InstructionBuffer code) {
+        while (pass(code)) {
+        }
+    }
+
+    /**
+     * @return 这一遍是否删掉了指令
+     */
+    private boolean pass(InstructionBuffer code) {
+        int n = code.size();
+        if (target.length < n + 1) {
+            target = new boolean[n + 1];
+            outTarget = new boolean[n + 1];
+            newIndex = new int[n + 1];
+        } else {
+            java.util.Arrays.fill(target, 0, n + 1, false);
+        }
+        // 跳转的操作数先换成目标的旧下标
+        for (int i = 0; i < n; i++) {
+            if (isBranch(code.operation(i))) {
+                int to = (int) (i + 1 + code.operand(i));
+                code.setOperand(i, to);
+                target[to] = true;
+            }
+        }
+
+        int w = 0;
+        for (int r = 0; r < n; r++) {
+            newIndex[r] = w;
+            Operation opt = code.operation(r);
+            if (!target[r] && w > 0 && isJumpOrRet(code.operation(w - 1)) && on(Rule.UNREACHABLE)) {
+                removed(Rule.UNREACHABLE, 1);
+                continue;
+            }
+            while (target[r] && w > 0 && code.operation(w - 1) == Operation.br && code.operand(w - 1) == r
+                    && on(Rule.BRANCH_NEXT)) {
+                w--;
+                newIndex[r] = w;
+                removed(Rule.BRANCH_NEXT, 1);
+            }
+            code.set(w, opt, code.operand(r));
+            outTarget[w] = target[r];
+            w++;
+            int matched;
+            while ((matched = matchTail(code, w)) != w) {
+                w = matched;
+            }
+        }
+        newIndex[n] = w;
+        code.truncate(w);
+
+        for (int i = 0; i < w; i++) {
+            if (isBranch(code.operation(i))) {
+                code.setOperand(i, newIndex[(int) code.operand(i)] - (i + 1));
+            }
+        }
+        return w < n;
+    }
+
+    /**
+     * 用规则匹配输出末尾、下标 w 之前的指令
+     *
+     * @return 改写后的输出长度，没有匹配时返回 w
+     */
+    private int matchTail(InstructionBuffer code, int w) {
+        if (w >= 3 && on(Rule.NEG_CONST) && free(w, 3)
+                && isPush(code, w - 3, 0) && code.operation(w - 2) == Operation.push
+                && code.operation(w - 1) == Operation.sub_i) {
+            code.set(w - 3, Operation.push, -code.operand(w - 2));
+            removed(Rule.NEG_CONST, 2);
+            return w - 2;
+        }
+        if (w >= 4 && on(Rule.NEG_LOAD) && free(w, 4)
+                && isPush(code, w - 4, 0) && isAddress(code.operation(w - 3))
+                && code.operation(w - 2) == Operation.load_64 && code.operation(w - 1) == Operation.sub_i) {
+            code.set(w - 4, code.operation(w - 3), code.operand(w - 3));
+            code.set(w - 3, Operation.load_64, 0);
+            code.set(w - 2, Operation.neg_i, 0);
+            removed(Rule.NEG_LOAD, 1);
+            return w - 1;
+        }
+        if (w >= 5 && on(Rule.STORE_LOAD) && code.operation(w - 1) == Operation.load_64
+                && isAddress(code.operation(w - 2))) {
+            int store = storeBefore(code, w - 2);
+            if (store >= 2 && free(w, w - (store - 2))
+                    && isAddress(code.operation(store - 2)) && code.operation(store - 1) == Operation.push
+                    && sameAddress(code, store - 2, w - 2)) {
+                code.set(w - 2, Operation.push, code.operand(store - 1));
+                removed(Rule.STORE_LOAD, 1);
+                return w - 1;
+            }
+        }
+        if (w >= 4 && on(Rule.LOAD_LOAD) && free(w, 4)
+                && isAddress(code.operation(w - 4)) && code.operation(w - 3) == Operation.load_64
+                && sameAddress(code, w - 4, w - 2) && code.operation(w - 1) == Operation.load_64) {
+            code.set(w - 2, Operation.dup, 0);
+            removed(Rule.LOAD_LOAD, 1);
+            return w - 1;
+        }
+        return w;
+    }
+
+    /**
+     * 从 i 往前跳过不读写变量的指令，找紧挨着的 store_64
+     *
+     * @return store_64 的下标，找不到时返回 -1
+     */
+    private static int storeBefore(InstructionBuffer code, int i) {
+        for (int j = i - 1; j >= 0 && j >= i - 1 - STORE_LOAD_GAP; j--) {
+            Operation opt = code.operation(j);
+            if (opt == Operation.store_64)
+                return j;
+            if (opt != Operation.push && opt != Operation.stackalloc && !isAddress(opt))
+                return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * 输出末尾 length 条指令里，除了第一条都不是跳转目标
+     */
+    private boolean free(int w, int length) {
+        for (int i = w - length + 1; i < w; i++) {
+            if (outTarget[i])
+                return false;
+        }
+        return true;
+    }
+
+    private boolean on(Rule rule) {
+        return enabled[rule.ordinal()];
+    }
+
+    private void removed(Rule rule, int count) {
+        report.removed[rule.ordinal()] += count;
+    }
+
+    private static boolean isPush(InstructionBuffer code, int i, long x) {
+        return code.operation(i) == Operation.push && code.operand(i) == x;
+    }
+
+    private static boolean sameAddress(InstructionBuffer code, int i, int j) {
+        return code.operation(i) == code.operation(j) && code.operand(i) == code.operand(j);
+    }
+
+    private static boolean isAddress(Operation opt) {
+        return opt == Operation.loca || opt == Operation.arga || opt == Operation.globa;
+    }
+
+    private static boolean isBranch(Operation opt) {
+        return opt == Operation.br || opt == Operation.br_true || opt == Operation.br_false;
+    }
+
+    private static boolean isJumpOrRet(Operation opt) {
+        return opt == Operation.br || opt == Operation.ret;
+    }
+}
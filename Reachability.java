@@ -0,0 +1,135 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 找出从 main 能调用到的函数
+ * 只扫一遍 token：最外层的每个 fn 记下名字和函数体里所有的 "名字 (" ，就是它调用的函数。
+ * 调用总是按名字找函数，不受局部变量遮挡，所以这样得到的调用关系就是编译时的调用关系。
+ * 全局声明的初始化表达式也会调用函数，和 main 一起作为起点
+ */
+public class Reachability {
+    private static final String MAIN = "main";
+
+    /**
+     * @return 按源码顺序，第 k 个 fn 是否可达；源码结构不完整时返回 null，表示全部照常编译，错误留给 Analyser 报告
+     */
+    public static boolean[] reachableFunctions(TokenBuffer tokens) {
+        try {
+            tokens.fillAll();
+        } catch (TokenizeError e) {
+            tokens.complete(e);
+            return null;
+        }
+        SymbolPool pool = tokens.getPool();
+
+        // 函数名 -> 同名的各个 fn 的序号
+        Map<Integer, List<Integer>> functions = new HashMap<>();
+        // 每个 fn 调用的名字
+        List<int[]> calls = new ArrayList<>();
+        Deque<Integer> work = new ArrayDeque<>();
+
+        int i = 0;
+        int size = tokens.size();
+        while (tokens.type(i) != TokenType.EOF) {
+            TokenType type = tokens.type(i);
+            if (type == TokenType.FN_KW) {
+                if (tokens.type(i + 1) != TokenType.IDENT) {
+                    return null;
+                }
+                int function = calls.size();
+                functions.computeIfAbsent(tokens.name(i + 1), k -> new ArrayList<>()).add(function);
+                i += 2;
+                while (i < size && tokens.type(i) != TokenType.L_BRACE && tokens.type(i) != TokenType.EOF) {
+                    i++;
+                }
+                int end = matchBrace(tokens, i);
+                if (end < 0) {
+                    return null;
+                }
+                calls.add(callsIn(tokens, i, end));
+                i = end + 1;
+            } else if (type == TokenType.LET_KW || type == TokenType.CONST_KW) {
+                int end = i;
+                while (tokens.type(end) != TokenType.SEMICOLON && tokens.type(end) != TokenType.EOF) {
+                    end++;
+                }
+                for (int name : callsIn(tokens, i, end)) {
+                    work.add(name);
+                }
+                i = end + 1;
+            } else {
+                return null;
+            }
+        }
+
+        boolean[] reachable = new boolean[calls.size()];
+        int main = pool.find(MAIN);
+        if (main >= 0) {
+            work.add(main);
+        }
+        while (!work.isEmpty()) {
+            List<Integer> targets = functions.get(work.poll());
+            if (targets == null) {
+                // 标准库函数，或者根本不是函数
+                continue;
+            }
+            for (int function : targets) {
+                if (!reachable[function]) {
+                    reachable[function] = true;
+                    for (int name : calls.get(function)) {
+                        work.add(name);
+                    }
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * @param start '{' 的下标
+     * @return 与之配对的 '}' 的下标，没有时返回 -1
+     */
+    private static int matchBrace(TokenBuffer tokens, int start) {
+        if (tokens.type(start) != TokenType.L_BRACE) {
+            return -1;
+        }
+        int depth = 0;
+        for (int i = start; ; i++) {
+            switch (tokens.type(i)) {
+                case L_BRACE:
+                    depth++;
+                    break;
+                case R_BRACE:
+                    if (--depth == 0) {
+                        return i;
+                    }
+                    break;
+                case EOF:
+                    return -1;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * [from, to) 之间所有被调用的名字
+     */
+    private static int[] callsIn(TokenBuffer tokens, int from, int to) {
+        int[] names = new int[4];
+        int count = 0;
+        for (int i = from; i + 1 < to; i++) {
+            if (tokens.type(i) == TokenType.IDENT && tokens.type(i + 1) == TokenType.L_PAREN) {
+                if (count == names.length) {
+                    names = java.util.Arrays.copyOf(names, count * 2);
+                }
+                names[count++] = tokens.name(i);
+            }
+        }
+        return java.util.Arrays.copyOf(names, count);
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.Arrays;
+
+/**
+ * 检查内层声明会遮住外层的同名符号：每个程序和把内层符号改了名字的同一个程序应该生成完全相同的字节，
+ * 局部变量的名字不会写进输出，所以不同就说明有读写落到了错误的符号上。有不同时以非 0 退出
+ *
+ * 用法：java ShadowCheck
+ */
+public class ShadowCheck {
+    // 每组两个程序：有遮蔽的写法，和内层改名之后的写法
+    private static final String[][] CASES = {
+            {"let-in-block",
+                    "fn main() -> void { let y: int = 4; { let y: int = 9; putint(y); } putint(y); }",
+                    "fn main() -> void { let y: int = 4; { let w: int = 9; putint(w); } putint(y); }"},
+            {"assign-in-block",
+                    "fn main() -> void { let y: int = 4; { let y: int = 9; y = 5; } putint(y); }",
+                    "fn main() -> void { let y: int = 4; { let w: int = 9; w = 5; } putint(y); }"},
+            {"three-levels",
+                    "fn main() -> void { let z: int = 1; { let z: int = 2; { let z: int = 3; putint(z); } "
+                            + "putint(z); z = 20; } putint(z); }",
+                    "fn main() -> void { let z: int = 1; { let a: int = 2; { let b: int = 3; putint(b); } "
+                            + "putint(a); a = 20; } putint(z); }"},
+            {"initializer",
+                    "fn main() -> void { let y: int = 4; { let y: int = y + 1; putint(y); } putint(y); }",
+                    "fn main() -> void { let y: int = 4; { let w: int = y + 1; putint(w); } putint(y); }"},
+            {"param",
+                    "fn f(x: int) -> int { { let x: int = 3; return x; } } fn main() -> void { putint(f(1)); }",
+                    "fn f(x: int) -> int { { let w: int = 3; return w; } } fn main() -> void { putint(f(1)); }"},
+            {"global",
+                    "let g: int = 1; fn main() -> void { let g: int = 2; putint(g); }",
+                    "let g: int = 1; fn main() -> void { let w: int = 2; putint(w); }"},
+            {"const-in-block",
+                    "fn main() -> void { let x: int = 1; { const x: int = 2; putint(x); } putint(x); }",
+                    "fn main() -> void { let x: int = 1; { const c: int = 2; putint(c); } putint(x); }"},
+            {"const-param",
+                    "fn f(x: int) -> int { { const x: int = 3; return x; } } fn main() -> void { putint(f(1)); }",
+                    "fn f(x: int) -> int { { const c: int = 3; return c; } } fn main() -> void { putint(f(1)); }"},
+            {"const-initializer",
+                    "const k: int = 2; fn main() -> void { const k: int = k * 3; putint(k); }",
+                    "const k: int = 2; fn main() -> void { const c: int = k * 3; putint(c); }"},
+            {"let-over-const",
+                    "const k: int = 2; fn main() -> void { let k: int = getint(); putint(k); }",
+                    "const k: int = 2; fn main() -> void { let w: int = getint(); putint(w); }"},
+    };
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        for (String[] c : CASES) {
+            ok &= check(c[0], c[1], c[2]);
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+        System.out.println("ok");
+    }
+
+    /**
+     * 折叠常量打开和关闭各比较一次，打开时局部常量的读取会直接写成 push
+     */
+    private static boolean check(String name, String shadowing, String renamed) {
+        for (boolean folding : new boolean[]{false, true}) {
+            Compiler.Options options = new Compiler.Options().setFolding(folding);
+            try {
+                if (!Arrays.equals(Compiler.compile(shadowing, options), Compiler.compile(renamed, options))) {
+                    System.err.println(name + (folding ? " (folding)" : "") + ": output differs from the renamed program");
+                    return false;
+                }
+            } catch (CompileError e) {
+                System.err.println(name + ": " + e);
+                return false;
+            }
+        }
+        System.out.println(name + ": ok");
+        return true;
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/**
+ * 流式的字符迭代器，用于标准输入
+ * 只在一个固定大小的环形缓冲区里保留当前位置附近的字符，边读边分析，
+ * 输入占用的内存和源文件大小无关
+ */
+public class StreamStringIter extends StringIter {
+    // 缓冲区大小，必须是 2 的幂
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    // 指针之前至少保留的字符数，unreadLast 最多能连续回退这么多次
+    private static final int HISTORY = 64;
+
+    private final Reader reader;
+
+    private final char[] ring = new char[CAPACITY];
+    private final char[] chunk = new char[CAPACITY - HISTORY];
+
+    // 已经放进缓冲区的字符总数（绝对下标）
+    private long filled = 0;
+    // 指向下一个要读取的字符（绝对下标）
+    private long ptr = 0;
+
+    // 每一行开头的偏移，报错时用来换算位置，每行只占一个 int
+    private final LineTable lines = new LineTable();
+
+    private boolean eof = false;
+    private boolean lastWasCR = false;
+    private char lastChar = '\n';
+
+    public StreamStringIter(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 保证绝对下标 i 处的字符已经在缓冲区里，除非输入已经结束
+     */
+    private void ensure(long i) {
+        while (filled <= i && !eof) {
+            fill();
+        }
+    }
+
+    private void fill() {
+        long retained = Math.max(0, ptr - HISTORY);
+        int space = (int) (CAPACITY - (filled - retained));
+        int n;
+        try {
+            n = reader.read(chunk, 0, Math.min(space, chunk.length));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (n < 0) {
+            // 和按行读入一致：最后一行没有换行时补一个
+            if (filled > 0 && lastChar != '\n') {
+                put('\n');
+            }
+            eof = true;
+            return;
+        }
+        // 统一换行为 \n，\r\n 只算一个
+        for (int k = 0; k < n; k++) {
+            char ch = chunk[k];
+            if (ch == '\r') {
+                put('\n');
+                lastWasCR = true;
+            } else {
+                if (!(ch == '\n' && lastWasCR)) {
+                    put(ch);
+                }
+                lastWasCR = false;
+            }
+        }
+    }
+
+    private void put(char ch) {
+        int slot = (int) (filled & MASK);
+        ring[slot] = ch;
+        filled++;
+        lastChar = ch;
+        if (ch == '\n') {
+            lines.add((int) filled);
+        }
+    }
+
+    @Override
+    public char nextChar() {
+        char ch = peekChar();
+        if (ptr < filled) {
+            ptr++;
+        }
+        return ch;
+    }
+
+    @Override
+    public char peekChar() {
+        ensure(ptr);
+        if (ptr >= filled) {
+            return 0;
+        }
+        return ring[(int) (ptr & MASK)];
+    }
+
+    @Override
+    public Boolean isEOF() {
+        ensure(ptr);
+        return ptr >= filled;
+    }
+
+    @Override
+    public void unreadLast() {
+        if (ptr == 0) {
+            throw new Error("previous position from beginning");
+        }
+        if (ptr - 1 < filled - CAPACITY) {
+            throw new Error("unread beyond the retained window");
+        }
+        ptr--;
+    }
+
+    @Override
+    public int nextOffset() {
+        if (isEOF()) {
+            throw new Error("advance after EOF");
+        }
+        return (int) ptr + 1;
+    }
+
+    @Override
+    public int currentOffset() {
+        return (int) ptr;
+    }
+
+    @Override
+    public int previousOffset() {
+        if (ptr == 0) {
+            throw new Error("previous position from beginning");
+        }
+        return (int) ptr - 1;
+    }
+
+    @Override
+    public Pos posOf(int offset) {
+        ensure(offset);
+        int row = lines.lineOf(offset);
+        return new Pos(row, offset - lines.start(row));
+    }
+}
@@ -0,0 +1,110 @@
+
+/**
+ * 标识符和字符串字面量的驻留池
+ * 相同的原文只保存一份 String，用从 0 开始的 int 编号代表，
+ * 符号表里比较名字只需要比较编号
+ */
+public class SymbolPool {
+    // 开放寻址的哈希表，存 编号+1，0 表示空槽
+    private int[] slots = new int[1024];
+
+    private String[] names = new String[256];
+    private int[] hashes = new int[256];
+    private int size = 0;
+
+    /**
+     * 获取原文对应的编号，第一次见到时才创建 String
+     */
+    public int intern(CharSequence s) {
+        int hash = hash(s);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && contentEquals(names[id], s)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = add(s.toString(), hash);
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * 查找原文对应的编号
+     *
+     * @return 不在池里时返回 -1
+     */
+    public int find(CharSequence s) {
+        int hash = hash(s);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && contentEquals(names[id], s)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash) {
+        if (size == names.length) {
+            String[] newNames = new String[size * 2];
+            int[] newHashes = new int[size * 2];
+            System.arraycopy(names, 0, newNames, 0, size);
+            System.arraycopy(hashes, 0, newHashes, 0, size);
+            names = newNames;
+            hashes = newHashes;
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    private static int hash(CharSequence s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean contentEquals(String name, CharSequence s) {
+        if (name.length() != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
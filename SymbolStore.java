@@ -0,0 +1,132 @@
+/**
+ * 按列存放的符号
+ * 每个符号只占几个数组槽位：名字在 SymbolPool 里的编号、种类、类型、标志位、深度、位置、编译期已知的值，不为每个符号创建对象。
+ * Table 里存全局符号，每个 FunctionTable 里存自己的参数和局部变量，都通过下标访问
+ */
+public class SymbolStore {
+    private static final NameType[] NAME_TYPES = NameType.values();
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    // flags 的各位
+    private static final byte CONSTANT = 1;
+    private static final byte INITIALIZED = 2;
+    // 值在编译期已知，见 values
+    private static final byte KNOWN = 4;
+
+    private int[] names;
+    private byte[] kinds;
+    private byte[] types;
+    private byte[] flags;
+    private int[] deeps;
+    // 声明时分配的位置，之后不再改变：参数是第几个参数，局部变量是第几个局部变量，全局符号是全局项的编号；
+    // 不占位置的局部常量是 -1
+    private int[] slots;
+    // 初始值是常量的 const 的值，只有带 KNOWN 标志时有意义
+    private long[] values;
+    private int size = 0;
+
+    public SymbolStore() {
+        this(8);
+    }
+
+    public SymbolStore(int capacity) {
+        names = new int[capacity];
+        kinds = new byte[capacity];
+        types = new byte[capacity];
+        flags = new byte[capacity];
+        deeps = new int[capacity];
+        slots = new int[capacity];
+        values = new long[capacity];
+    }
+
+    /**
+     * @return 新符号的下标
+     */
+    public int add(int name, NameType nameType, TokenType tokenType, int deep, boolean isConstant, boolean isInitialized, int slot) {
+        if (size == names.length) {
+            grow();
+        }
+        names[size] = name;
+        kinds[size] = (byte) nameType.ordinal();
+        types[size] = (byte) tokenType.ordinal();
+        flags[size] = (byte) ((isConstant ? CONSTANT : 0) | (isInitialized ? INITIALIZED : 0));
+        deeps[size] = deep;
+        slots[size] = slot;
+        return size++;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = java.util.Arrays.copyOf(names, capacity);
+        kinds = java.util.Arrays.copyOf(kinds, capacity);
+        types = java.util.Arrays.copyOf(types, capacity);
+        flags = java.util.Arrays.copyOf(flags, capacity);
+        deeps = java.util.Arrays.copyOf(deeps, capacity);
+        slots = java.util.Arrays.copyOf(slots, capacity);
+        values = java.util.Arrays.copyOf(values, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 丢掉下标 size 及以后的符号，离开语句块时使用
+     */
+    public void truncate(int size) {
+        this.size = size;
+    }
+
+    public int name(int i) {
+        return names[i];
+    }
+
+    public NameType nameType(int i) {
+        return NAME_TYPES[kinds[i]];
+    }
+
+    public TokenType tokenType(int i) {
+        return TOKEN_TYPES[types[i]];
+    }
+
+    public void setTokenType(int i, TokenType tokenType) {
+        types[i] = (byte) tokenType.ordinal();
+    }
+
+    public int deep(int i) {
+        return deeps[i];
+    }
+
+    public int slot(int i) {
+        return slots[i];
+    }
+
+    public void setSlot(int i, int slot) {
+        slots[i] = slot;
+    }
+
+    public boolean isConstant(int i) {
+        return (flags[i] & CONSTANT) != 0;
+    }
+
+    public boolean isInitialized(int i) {
+        return (flags[i] & INITIALIZED) != 0;
+    }
+
+    public void setInitialized(int i) {
+        flags[i] |= INITIALIZED;
+    }
+
+    public boolean isKnown(int i) {
+        return (flags[i] & KNOWN) != 0;
+    }
+
+    public long value(int i) {
+        return values[i];
+    }
+
+    public void setValue(int i, long value) {
+        values[i] = value;
+        flags[i] |= KNOWN;
+    }
+}
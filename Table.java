@@ -1,72 +1,221 @@
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 public class Table {
     List<FunctionTable> functionTables;
-    List<Token> global;
-    List<Instruction> instructions;
-    /** 符号表 */
-    List<SymbolEntry> symbolEntries;
+    GlobalStore global;
+    // 全局变量的初始化代码，最后成为 _start 的开头
+    CodeBuffer code;
+    /** 符号表，只有全局符号，参数和局部变量在各自的 FunctionTable 里 */
+    SymbolStore symbols;
+    // 能看到的全局符号个数，fork 出来的表只看到前面一部分
+    int symbolCount;
+    // 名字 -> 全局符号在 symbols 里的下标加一，0 表示没有。全局符号不会重名
+    int[] symbolIndex;
+    // 名字 -> 函数在 functionTables 里的下标加一，0 表示没有。generate() 在最前面插入 _start 之后不再查找
+    int[] functionIndex;
+    // 名字 -> 第一个这样的全局项的编号加一，0 表示没有。字符串会登记两次，查到的总是第一次
+    // 字符串字面量的名字带着引号，不会和标识符同名，所以一个名字只对应一种 token 类型
+    int[] globalIndex;
 
     int outFuncNum;
     String[] outFunc={"getint","getchar","putint","putchar","putstr","putln",};
 
+    // 标识符和字符串字面量的驻留池，和 Tokenizer 共用
+    SymbolPool pool;
+
+    // 只在 fork() 出来的表里不为 null：这个函数体里赋过值的全局变量，共享的全局符号不会被改动
+    BitSet initializedGlobals;
+
+    /**
+     * 全局变量在这个函数体之前是否已赋值取决于前面的函数体，单独编译一个函数时无法确定
+     */
+    public static class Unresolved extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public Unresolved() {
+            super(null, null, false, false);
+        }
+    }
+
     public Table() throws AnalyzeError {
+        this(new SymbolPool());
+    }
+
+    public Table(SymbolPool pool) throws AnalyzeError {
+        this.pool = pool;
         this.functionTables = new ArrayList<>();
-        this.global = new ArrayList<>();
-        this.symbolEntries=new ArrayList<>();
-        this.instructions = new ArrayList<>();
+        this.global = new GlobalStore(pool);
+        this.symbols=new SymbolStore(64);
+        this.symbolIndex=new int[64];
+        this.functionIndex=new int[64];
+        this.globalIndex=new int[64];
+        this.code = new CodeBuffer();
         this.outFuncNum=0;
         initGlobal();
         init();
 
     }
 
-    public List<Token> getGlobal() {
+    /**
+     * 单独编译一个函数体用的表
+     * 看到的全局符号和函数只到这个函数为止，和顺序编译到这里时一样；当前函数仍然是最后一个。
+     * 全局的部分和原表共用，只读不写，所以不同函数的 fork 可以在不同线程里同时使用
+     *
+     * @param function 函数在 functionTables 里的下标
+     * @param symbols  这个函数签名分析完时全局符号的个数
+     */
+    public Table fork(int function, int symbols) {
+        return new Table(this, function, symbols);
+    }
+
+    private Table(Table parent, int function, int symbols) {
+        this.pool = parent.pool;
+        this.functionTables = parent.functionTables.subList(0, function + 1);
+        this.global = parent.global;
+        this.code = parent.code;
+        this.symbols = parent.symbols;
+        this.symbolCount = symbols;
+        this.symbolIndex = parent.symbolIndex;
+        this.functionIndex = parent.functionIndex;
+        this.globalIndex = parent.globalIndex;
+        this.outFuncNum = parent.outFuncNum;
+        this.initializedGlobals = new BitSet();
+    }
+
+    public int getSymbolCount() {
+        return symbolCount;
+    }
+
+    // get() 返回的符号编号：全局符号是 下标*2，当前函数的参数和局部变量是 下标*2+1，没有是 -1
+    // 局部符号的编号只在当前函数里、所在的语句块结束之前有效
+
+    private SymbolStore storeOf(int symbol) {
+        return (symbol&1)==0 ? symbols : getNowFuncTable().getSymbols();
+    }
+
+    public NameType getNameType(int symbol) {
+        return storeOf(symbol).nameType(symbol>>1);
+    }
+
+    public TokenType getTokenType(int symbol) {
+        return storeOf(symbol).tokenType(symbol>>1);
+    }
+
+    public int getDeep(int symbol) {
+        return storeOf(symbol).deep(symbol>>1);
+    }
+
+    public int getSlot(int symbol) {
+        return storeOf(symbol).slot(symbol>>1);
+    }
+
+    public boolean isConstant(int symbol) {
+        return storeOf(symbol).isConstant(symbol>>1);
+    }
+
+    /**
+     * 符号是否已赋值
+     *
+     * @throws Unresolved 在 fork 出来的表里，全局变量还没确定是否赋值时
+     */
+    public boolean isInitialized(int symbol) {
+        SymbolStore store=storeOf(symbol);
+        int index=symbol>>1;
+        if (store.isInitialized(index))
+            return true;
+        if (initializedGlobals == null || store.deep(index) != 1)
+            return false;
+        if (initializedGlobals.get(index))
+            return true;
+        throw new Unresolved();
+    }
+
+    public void setInitialized(int symbol) {
+        SymbolStore store=storeOf(symbol);
+        int index=symbol>>1;
+        if (initializedGlobals != null && store.deep(index) == 1) {
+            if (!store.isInitialized(index))
+                initializedGlobals.set(index);
+        } else {
+            store.setInitialized(index);
+        }
+    }
+
+    /**
+     * 符号是否是值在编译期已知的常量
+     */
+    public boolean isKnown(int symbol) {
+        return storeOf(symbol).isKnown(symbol>>1);
+    }
+
+    public long getValue(int symbol) {
+        return storeOf(symbol).value(symbol>>1);
+    }
+
+    /**
+     * 记下常量的值，之后读它的地方直接写成 push
+     * 局部常量不再需要位置，symbol 必须是当前函数最后添加的符号；全局常量仍然保留全局项和初始化代码
+     */
+    public void setValue(int symbol, long value) {
+        storeOf(symbol).setValue(symbol>>1,value);
+        if((symbol&1)!=0)
+            getNowFuncTable().releaseLastSlot();
+    }
+
+    public GlobalStore getGlobal() {
         return global;
     }
 
     private void initGlobal() {
         for (String s:outFunc){
-            global.add(new Token(TokenType.IDENT,s,new Pos(-1,-1),new Pos(-1,-1)));
+            addGlobal(pool.intern(s),TokenType.IDENT);
         }
     }
     private void init() throws AnalyzeError {
-        this.symbolEntries.add(new SymbolEntry("getint",NameType.Proc,TokenType.IDENT,1,true,true,0));
-        FunctionTable getint=new FunctionTable("getint",getGlobalId(new Token(TokenType.IDENT,"getint",new Pos(-1,-1),new Pos(-1,-1))),TokenType.UINT_LITERAL);
-        this.functionTables.add(getint);
+        addSymbol(pool.intern("getint"),NameType.Proc,TokenType.IDENT,true,true,0);
+        FunctionTable getint=new FunctionTable(pool.intern("getint"),getGlobalId(pool.intern("getint"),TokenType.IDENT),TokenType.UINT_LITERAL);
+        getint.sealParams();
+        addFunctionTable(getint);
 
-      /*  this.symbolEntries.add(new SymbolEntry("getdouble",NameType.Proc,TokenType.IDENT,1,true,true,0));
+      /*  this.symbolEntries.add(new SymbolEntry(pool.intern("getdouble"),NameType.Proc,TokenType.IDENT,1,true,true,0));
         FunctionTable getdouble=new FunctionTable("getdouble",-1);
         this.functionTables.add(getdouble);*/
 
-        this.symbolEntries.add(new SymbolEntry("getchar",NameType.Proc,TokenType.IDENT,1,true,true,0));
-        FunctionTable getchar=new FunctionTable("getchar",getGlobalId(new Token(TokenType.IDENT,"getchar",new Pos(-1,-1),new Pos(-1,-1))),TokenType.UINT_LITERAL);
-        this.functionTables.add(getchar);
-
-        this.symbolEntries.add(new SymbolEntry("putint",NameType.Proc,TokenType.IDENT,1,true,true,0));
-        FunctionTable putint=new FunctionTable("putint",getGlobalId(new Token(TokenType.IDENT,"putint",new Pos(-1,-1),new Pos(-1,-1))),TokenType.VOID_KW);
-        putint.getSymbolEntries().add(new SymbolEntry("",NameType.Params,TokenType.UINT_LITERAL,2,false,true,0));
-        this.functionTables.add(putint);
-    /*    this.symbolEntries.add(new SymbolEntry("putdouble",NameType.Proc,TokenType.IDENT,1,true,true,0));
+        addSymbol(pool.intern("getchar"),NameType.Proc,TokenType.IDENT,true,true,1);
+        FunctionTable getchar=new FunctionTable(pool.intern("getchar"),getGlobalId(pool.intern("getchar"),TokenType.IDENT),TokenType.UINT_LITERAL);
+        getchar.sealParams();
+        addFunctionTable(getchar);
+
+        addSymbol(pool.intern("putint"),NameType.Proc,TokenType.IDENT,true,true,2);
+        FunctionTable putint=new FunctionTable(pool.intern("putint"),getGlobalId(pool.intern("putint"),TokenType.IDENT),TokenType.VOID_KW);
+        putint.getSymbols().add(pool.intern(""),NameType.Params,TokenType.UINT_LITERAL,2,false,true,0);
+        putint.sealParams();
+        addFunctionTable(putint);
+    /*    this.symbolEntries.add(new SymbolEntry(pool.intern("putdouble"),NameType.Proc,TokenType.IDENT,1,true,true,0));
         FunctionTable putdouble=new FunctionTable("putdouble",-1);
         this.functionTables.add(putdouble);*/
 
-        this.symbolEntries.add(new SymbolEntry("putchar",NameType.Proc,TokenType.IDENT,1,true,true,0));
-        FunctionTable putchar=new FunctionTable("putchar",getGlobalId(new Token(TokenType.IDENT,"putchar",new Pos(-1,-1),new Pos(-1,-1))),TokenType.VOID_KW);
-        putchar.getSymbolEntries().add(new SymbolEntry("",NameType.Params,TokenType.UINT_LITERAL,2,false,true,0));
-        this.functionTables.add(putchar);
+        addSymbol(pool.intern("putchar"),NameType.Proc,TokenType.IDENT,true,true,3);
+        FunctionTable putchar=new FunctionTable(pool.intern("putchar"),getGlobalId(pool.intern("putchar"),TokenType.IDENT),TokenType.VOID_KW);
+        putchar.getSymbols().add(pool.intern(""),NameType.Params,TokenType.UINT_LITERAL,2,false,true,0);
+        putchar.sealParams();
+        addFunctionTable(putchar);
 
-        this.symbolEntries.add(new SymbolEntry("putstr",NameType.Proc,TokenType.VOID_KW,1,true,true,0));
-        FunctionTable putstr=new FunctionTable("putstr",getGlobalId(new Token(TokenType.IDENT,"putstr",new Pos(-1,-1),new Pos(-1,-1))),TokenType.VOID_KW);
-        putstr.getSymbolEntries().add(new SymbolEntry("",NameType.Params,TokenType.UINT_LITERAL,2,false,true,0));
-        this.functionTables.add(putstr);
+        addSymbol(pool.intern("putstr"),NameType.Proc,TokenType.VOID_KW,true,true,4);
+        FunctionTable putstr=new FunctionTable(pool.intern("putstr"),getGlobalId(pool.intern("putstr"),TokenType.IDENT),TokenType.VOID_KW);
+        putstr.getSymbols().add(pool.intern(""),NameType.Params,TokenType.UINT_LITERAL,2,false,true,0);
+        putstr.sealParams();
+        addFunctionTable(putstr);
 
-        this.symbolEntries.add(new SymbolEntry("putln",NameType.Proc,TokenType.VOID_KW,1,true,true,0));
-        FunctionTable putln=new FunctionTable("putln",getGlobalId(new Token(TokenType.IDENT,"putln",new Pos(-1,-1),new Pos(-1,-1))),TokenType.VOID_KW);
-        this.functionTables.add(putln);
+        addSymbol(pool.intern("putln"),NameType.Proc,TokenType.VOID_KW,true,true,5);
+        FunctionTable putln=new FunctionTable(pool.intern("putln"),getGlobalId(pool.intern("putln"),TokenType.IDENT),TokenType.VOID_KW);
+        putln.sealParams();
+        addFunctionTable(putln);
 
         this.outFuncNum=6;
     }
@@ -76,146 +225,155 @@ public class Table {
         return functionTables;
     }
 
-    public SymbolEntry get(String name,int deep,Pos curPos) {
-        int off=-1;
-
+    /**
+     * 按名字查找符号，先找当前函数，再找全局，同名时取最内层的那个
+     * 只读，不改动符号本身，fork 出来的表可以在不同线程里同时查找共享的全局符号
+     *
+     * @return 符号编号，没有时返回 -1
+     */
+    public int get(int name,int deep) {
         if(deep>1){
-            List<SymbolEntry> symbolEntries=this.functionTables.get(this.functionTables.size()-1).getSymbolEntries();
-            String funcName=this.functionTables.get(this.functionTables.size()-1).getName();
-            if(getSymbolEntry(funcName).getTokenType()!=TokenType.VOID_KW)
-                off++;
-            for(SymbolEntry symbolEntry:symbolEntries){
-                off++;
-                if(symbolEntry.getNameType()==NameType.Var)
-                    off=0;
-                if(symbolEntry.getName().equals(name)){
-                    symbolEntry.setOff(off);
-                    return symbolEntry;
-                }
-            }
+            int index=getNowFuncTable().indexOf(name);
+            if(index>=0)
+                return index<<1|1;
         }
-        off=0;
-        for (SymbolEntry symbolEntry : symbolEntries) {
-            off++;
-            if (symbolEntry.getName().equals(name)) {
-                symbolEntry.setOff(off);
-                return symbolEntry;
-            }
-        }
-        return null;
+        int index=globalIndexOf(name);
+        return index<0 ? -1 : index<<1;
+    }
+
+    /**
+     * @return 全局符号的下标，没有或者在 fork 出来的表里还看不到时返回 -1
+     */
+    private int globalIndexOf(int name) {
+        if(name<0||name>=symbolIndex.length)
+            return -1;
+        int index=symbolIndex[name]-1;
+        return index<symbolCount ? index : -1;
+    }
+
+    private int addSymbol(int name, NameType nameType, TokenType tokenType, boolean isConstant, boolean isInitialized, int slot) {
+        int index=symbols.add(name,nameType,tokenType,1,isConstant,isInitialized,slot);
+        symbolIndex=setIndex(symbolIndex,name,index+1);
+        symbolCount=symbols.size();
+        return index;
+    }
+
+    private void addFunctionTable(FunctionTable functionTable) {
+        this.functionTables.add(functionTable);
+        functionIndex=setIndex(functionIndex,functionTable.getName(),functionTables.size());
     }
 
-    private SymbolEntry getSymbolEntry(String name) {
-        for(SymbolEntry symbolEntry:symbolEntries){
-            if(symbolEntry.getName().equals(name))
-                return symbolEntry;
+    /**
+     * index[name] = value，数组不够长时先扩大
+     */
+    private static int[] setIndex(int[] index, int name, int value) {
+        if(name>=index.length){
+            index=Arrays.copyOf(index,Math.max(name+1,index.length*2));
         }
-        return null;
+        index[name]=value;
+        return index;
+    }
+
+    /**
+     * @return 函数在 functionTables 里的下标，没有或者在 fork 出来的表里还看不到时返回 -1
+     */
+    private int functionIndexOf(int name) {
+        if(name<0||name>=functionIndex.length)
+            return -1;
+        int index=functionIndex[name]-1;
+        return index<functionTables.size() ? index : -1;
     }
 
     public int getOutFuncNum() {
         return outFuncNum;
     }
 
-    public void put(SymbolEntry symbolEntry, int deep, Token token) {
+    /**
+     * 添加一个符号并分配它的位置，全局符号同时成为全局表里的一项，位置就是这一项的编号
+     *
+     * @param globalType 全局符号在全局表里的 token 类型，标识符是 IDENT，字符串字面量是 STRING_LITERAL
+     * @return 符号编号，同 get()
+     */
+    public int put(int name, NameType nameType, TokenType tokenType, int deep, boolean isConstant, boolean isInitialized, TokenType globalType) {
         if(deep==1){
-            this.addGlobal(token);
-            this.symbolEntries.add(symbolEntry);
-            if(symbolEntry.getNameType()== NameType.Proc){
-                this.functionTables.add(new FunctionTable(symbolEntry.getName(),this.global.size()-1,symbolEntry.getTokenType()));
+            // 字符串字面量之后还会由 Analyser 再登记一次，两项一样都是常量字符串
+            int id=globalType==TokenType.STRING_LITERAL
+                    ? this.addGlobal(name,globalType,true,NameType.String,null)
+                    : this.addGlobal(name,globalType);
+            int index=addSymbol(name,nameType,tokenType,isConstant,isInitialized,id);
+            if(nameType== NameType.Proc){
+                addFunctionTable(new FunctionTable(name,id,tokenType));
             }
+            return index<<1;
         }
         else{
-            this.functionTables.get(this.functionTables.size()-1).addSymbolEntry(symbolEntry);
+            return getNowFuncTable().addSymbol(name,nameType,tokenType,deep,isConstant,isInitialized)<<1|1;
         }
     }
 
-    public void addInstruction(Instruction instruction,int deep) {
+    /**
+     * 获取指令要写入的缓冲区，全局是初始化代码，否则是当前函数
+     */
+    public CodeBuffer getCode(int deep) {
         if(deep==1)
-            this.instructions.add(instruction);
+            return this.code;
         else
-            this.functionTables.get(this.functionTables.size()-1).getInstructions().add(instruction);
+            return this.functionTables.get(this.functionTables.size()-1).getCode();
     }
 
+    /**
+     * 获取函数的参数类型
+     *
+     * @return 没有这个函数时返回 null
+     */
+    public List<TokenType> getFunctionParamsType(int name) {
+        int index=functionIndexOf(name);
+        return index<0 ? null : functionTables.get(index).getParamTypes();
+    }
 
-    public void addAllInstructions(List<Instruction> instructions,int deep) {
-        if(deep==1)
-            this.instructions.addAll(instructions);
-        else
-            this.functionTables.get(this.functionTables.size()-1).getInstructions().addAll(instructions);
-    }
-
-    public List<TokenType> getFunctionParamsType(Token nameToken) throws AnalyzeError {
-        boolean flag=false;
-        List<TokenType> tokenTypes=new ArrayList<>();
-        for (FunctionTable func:functionTables) {
-            if(func.getName().equals(nameToken.getValueString())){
-                flag=true;
-                for (SymbolEntry symbolEntry:func.getSymbolEntries()){
-                    if(symbolEntry.getNameType()==NameType.Params){
-                        tokenTypes.add(symbolEntry.getTokenType());
-                    }
-                    else break;
-                }
-                if(flag)
-                    break;
-            }
-        }
-        if(flag) return tokenTypes;
-        throw new AnalyzeError(ErrorCode.ExpectFuncToken, nameToken.getStartPos());
+    /**
+     * @return 没有这个全局项时返回 -1
+     */
+    public int getGlobalId(int name, TokenType tokenType) {
+        if(name<0||name>=globalIndex.length)
+            return -1;
+        int id=globalIndex[name]-1;
+        return id>=0&&global.tokenType(id)==tokenType ? id : -1;
     }
 
-    public int getGlobalId(Token token) throws AnalyzeError {
-        int id=0;
-        for(Token s:global){
-            if(s.getValueString().equals(token.getValueString())&&s.getTokenType()==token.getTokenType())
-                return id;
-            id++;
-        }
-        throw new AnalyzeError(ErrorCode.NotGlobal, token.getStartPos());
+    private void indexGlobal(int name) {
+        if(name>=globalIndex.length||globalIndex[name]==0)
+            globalIndex=setIndex(globalIndex,name,global.size()+1);
     }
 
-    public void addGlobal(Token token) {
-        this.global.add(token);
+    /**
+     * @return 新全局项的编号
+     */
+    public int addGlobal(int name, TokenType tokenType) {
+        indexGlobal(name);
+        return global.add(name,tokenType);
     }
 
-    public void addGlobal(Token token, boolean isConstant, NameType nameType, TokenType ty){
-        token.setNameType(nameType);
-        token.setTy(ty);
-        this.global.add(token);
-        if (isConstant)
-            token.setIs_const(true);
-        else
-            token.setIs_const(false);
+    public int addGlobal(int name, TokenType tokenType, boolean isConstant, NameType nameType, TokenType ty){
+        indexGlobal(name);
+        return global.add(name,tokenType,isConstant,nameType,ty);
     }
 
     public void generate() throws AnalyzeError {
-        SymbolEntry symbolEntry=getSymbolEntry("main");
-        if(symbolEntry==null||symbolEntry.getNameType()!=NameType.Proc){
+        int main=globalIndexOf(pool.intern("main"));
+        if(main<0||symbols.nameType(main)!=NameType.Proc){
             throw new AnalyzeError(ErrorCode.NoMainFunc,new Pos(0,0));
         }
-        long id=getGlobalId(new Token(TokenType.IDENT,"main",new Pos(-1,-1),new Pos(-1,-1)));
-        addGlobal(new Token(TokenType.IDENT,"_start",new Pos(-1,-1),new Pos(-1,-1)));
-        FunctionTable functionTable=new FunctionTable("_start",this.global.size()-1,TokenType.VOID_KW);
-        List<Instruction> instructions=functionTable.getInstructions();
-        instructions.addAll(this.instructions);
-        instructions.addAll(addstackllocInstruction("main"));
-        instructions.add(new Instruction(Operation.call,getFunclId(new Token(TokenType.IDENT,"main",new Pos(-1,-1),new Pos(-1,-1)))));
+        addGlobal(pool.intern("_start"),TokenType.IDENT);
+        // 初始化代码直接接着写 main 的调用
+        FunctionTable functionTable=new FunctionTable(pool.intern("_start"),this.global.size()-1,TokenType.VOID_KW,this.code);
+        code.emit(Operation.stackalloc,getReturnSlots(pool.intern("main")));
+        code.emit(Operation.call,getFunclId(pool.intern("main")));
         this.functionTables.add(0,functionTable);
     }
 
-    public List<Instruction> addstackllocInstruction(String name) throws AnalyzeError {
-        FunctionTable func=null;
-        for (FunctionTable functionTable:functionTables){
-            if(functionTable.getName().equals(name)){
-                func=functionTable;
-                break;
-            }
-        }
-        List<Instruction> instructions=new ArrayList<>();
-        instructions.add(new Instruction(Operation.stackalloc,(long)func.getReturnSoltNum()));
-
-        return instructions;
+    public int getReturnSlots(int name) {
+        return functionTables.get(functionIndexOf(name)).getReturnSoltNum();
     }
 
     public void outDeep(int deep) {
@@ -226,29 +384,25 @@ public class Table {
         return this.functionTables.get(functionTables.size()-1);
     }
 
-    public void setFuncReturn(String valueString, int deep, Pos startPos, TokenType tokenType) {
-        get(valueString,deep,startPos).setTokenType(tokenType);
+    public void setFuncReturn(int name, int deep, TokenType tokenType) {
+        int symbol=get(name,deep);
+        storeOf(symbol).setTokenType(symbol>>1,tokenType);
         functionTables.get(functionTables.size()-1).setTokenType(tokenType);
     }
 
-    public boolean checkOutFunc(String valueString) {
-        for (String s:outFunc){
-            if(s.equals(valueString))
-                return true;
-        }
-        return false;
+    public boolean checkOutFunc(int name) {
+        // 标准库函数总是 functionTables 里的前 outFuncNum 个
+        int index=functionIndexOf(name);
+        return index>=0&&index<outFuncNum;
     }
 
-    public Long getFunclId(Token token) throws AnalyzeError {
-        String valueString=token.getValueString();
-        long ind=1;
-        for (FunctionTable functionTable:functionTables){
-            if(functionTable.getName().equals(valueString))
-                return ind;
-            ind++;
-        }
-
-        throw new AnalyzeError(ErrorCode.ExpectFuncToken, token.getStartPos());
+    /**
+     * @return 没有这个函数时返回 null
+     */
+    public Long getFunclId(int name) {
+        // 编号从 1 开始，0 留给最后插在最前面的 _start
+        int index=functionIndexOf(name);
+        return index<0 ? null : (long)index+1;
     }
 
 }
\ No newline at end of file
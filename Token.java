@@ -6,9 +6,10 @@ public class Token {
     private Object value;
     private Pos startPos;
     private Pos endPos;
-    private NameType nameType;
-    private boolean is_const = false;
-    private TokenType ty;
+    // 从源文件读出的 token 只记录起止偏移，行列在第一次用到时才换算
+    private StringIter source;
+    private int startOffset;
+    private int endOffset;
 
     public Token(TokenType tokenType, Object value, Pos startPos, Pos endPos) {
         this.tokenType = tokenType;
@@ -17,11 +18,22 @@ public class Token {
         this.endPos = endPos;
     }
 
+    public Token(TokenType tokenType, Object value, StringIter source, int startOffset, int endOffset) {
+        this.tokenType = tokenType;
+        this.value = value;
+        this.source = source;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+    }
+
     public Token(Token token) {
         this.tokenType = token.tokenType;
         this.value = token.value;
         this.startPos = token.startPos;
         this.endPos = token.endPos;
+        this.source = token.source;
+        this.startOffset = token.startOffset;
+        this.endOffset = token.endOffset;
     }
 
     @Override
@@ -32,12 +44,12 @@ public class Token {
             return false;
         Token token = (Token) o;
         return tokenType == token.tokenType && Objects.equals(value, token.value)
-                && Objects.equals(startPos, token.startPos) && Objects.equals(endPos, token.endPos);
+                && Objects.equals(getStartPos(), token.getStartPos()) && Objects.equals(getEndPos(), token.getEndPos());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(tokenType, value, startPos, endPos);
+        return Objects.hash(tokenType, value, getStartPos(), getEndPos());
     }
 
     public String getValueString() {
@@ -64,6 +76,9 @@ public class Token {
     }
 
     public Pos getStartPos() {
+        if (startPos == null && source != null) {
+            startPos = source.posOf(startOffset);
+        }
         return startPos;
     }
 
@@ -72,6 +87,9 @@ public class Token {
     }
 
     public Pos getEndPos() {
+        if (endPos == null && source != null) {
+            endPos = source.posOf(endOffset);
+        }
         return endPos;
     }
 
@@ -82,8 +100,9 @@ public class Token {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Line: ").append(this.startPos.row).append(' ');
-        sb.append("Column: ").append(this.startPos.col).append(' ');
+        Pos startPos = getStartPos();
+        sb.append("Line: ").append(startPos.row).append(' ');
+        sb.append("Column: ").append(startPos.col).append(' ');
         sb.append("Type: ").append(this.tokenType).append(' ');
         sb.append("Value: ").append(this.value);
         return sb.toString();
@@ -91,42 +110,7 @@ public class Token {
 
     public String toStringAlt() {
         return new StringBuilder().append("Token(").append(this.tokenType).append(", value: ").append(value)
-                .append("at: ").append(this.startPos).toString();
-    }
-
-    public NameType getNameType() {
-        return nameType;
-    }
-
-    public void setNameType(NameType nameType) {
-        this.nameType = nameType;
-    }
-
-    public boolean isIs_const() {
-        return is_const;
-    }
-
-    public void setIs_const(boolean is_const) {
-        this.is_const = is_const;
-    }
-
-    public TokenType getTy() {
-        return ty;
-    }
-
-    public void setTy(TokenType ty) {
-        this.ty = ty;
-    }
-
-    public int getCount() {
-
-        if(nameType==NameType.String||nameType==NameType.Proc)
-            return getValueString().length();
-        else {
-            if (ty==TokenType.INT_KW)
-                return 8;
-            else return -1;
-        }
+                .append("at: ").append(getStartPos()).toString();
     }
 
     
@@ -0,0 +1,229 @@
+/**
+ * 按列存放的 token 流
+ * 每个 token 只占几个数组槽位：类型、起始偏移、长度、值。
+ * UINT_LITERAL 的值就是数字本身，IDENT、STRING_LITERAL 的值是原文在 SymbolPool 里的编号。
+ * Analyser 通过游标读取，不需要为每个 token 创建对象，行列也只在报错时才换算
+ */
+public class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Tokenizer tokenizer;
+    private final StringIter source;
+    private final SymbolPool pool;
+
+    private byte[] types = new byte[1024];
+    private int[] starts = new int[1024];
+    private int[] lengths = new int[1024];
+    private long[] values = new long[1024];
+    private int size = 0;
+
+    // 指向下一个要读取的 token
+    private int cursor = 0;
+
+    // 已经由外部整体填好，不再调用 Tokenizer
+    private boolean complete = false;
+    // 填好的 token 之后出现的分词错误，读到那里时才抛出，和逐个读取的顺序一致
+    private TokenizeError pending;
+
+    public TokenBuffer(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+        this.source = tokenizer.getIter();
+        this.pool = tokenizer.getPool();
+    }
+
+    /**
+     * 共用 other 的 token，游标独立
+     */
+    private TokenBuffer(TokenBuffer other, int cursor) {
+        this.tokenizer = other.tokenizer;
+        this.source = other.source;
+        this.pool = other.pool;
+        this.types = other.types;
+        this.starts = other.starts;
+        this.lengths = other.lengths;
+        this.values = other.values;
+        this.size = other.size;
+        this.cursor = cursor;
+        this.complete = true;
+        this.pending = other.pending;
+    }
+
+    /**
+     * 从 position 开始读取的另一个游标，只能在 token 全部填好之后使用
+     * 各个游标互不影响，可以分给不同线程
+     */
+    public TokenBuffer fork(int position) {
+        if (!complete) {
+            throw new Error("token buffer is not complete");
+        }
+        return new TokenBuffer(this, position);
+    }
+
+    /**
+     * 追加一个 token，由 Tokenizer 调用
+     */
+    public void add(TokenType type, int start, int length, long value) {
+        if (size == types.length) {
+            grow();
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        values[size] = value;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        byte[] newTypes = new byte[capacity];
+        int[] newStarts = new int[capacity];
+        int[] newLengths = new int[capacity];
+        long[] newValues = new long[capacity];
+        System.arraycopy(types, 0, newTypes, 0, size);
+        System.arraycopy(starts, 0, newStarts, 0, size);
+        System.arraycopy(lengths, 0, newLengths, 0, size);
+        System.arraycopy(values, 0, newValues, 0, size);
+        types = newTypes;
+        starts = newStarts;
+        lengths = newLengths;
+        values = newValues;
+    }
+
+    /**
+     * 保证下标 i 处的 token 已经读入，读到 EOF 之后就不再调用 Tokenizer
+     */
+    private void ensure(int i) throws TokenizeError {
+        if (complete) {
+            if (size <= i && pending != null) {
+                throw pending;
+            }
+            return;
+        }
+        while (size <= i && !(size > 0 && types[size - 1] == TokenType.EOF.ordinal())) {
+            tokenizer.nextInto(this);
+        }
+    }
+
+    /**
+     * 追加另一个 buffer 里的全部 token，名字编号换算成本 buffer 池里的编号
+     * 按顺序追加时，换算出的编号和直接逐个读入得到的编号相同
+     */
+    public void addAll(TokenBuffer other) {
+        int[] names = new int[other.pool.size()];
+        java.util.Arrays.fill(names, -1);
+        for (int i = 0; i < other.size; i++) {
+            long value = other.values[i];
+            if (other.types[i] == TokenType.IDENT.ordinal() || other.types[i] == TokenType.STRING_LITERAL.ordinal()) {
+                int local = (int) value;
+                if (names[local] < 0) {
+                    names[local] = pool.intern(other.pool.name(local));
+                }
+                value = names[local];
+            }
+            add(TYPES[other.types[i]], other.starts[i], other.lengths[i], value);
+        }
+    }
+
+    /**
+     * 标记 token 已经全部填好，error 不为 null 时在读到末尾之后抛出
+     */
+    public void complete(TokenizeError error) {
+        this.complete = true;
+        this.pending = error;
+    }
+
+    /**
+     * 一次读完整个文件
+     */
+    public void fillAll() throws TokenizeError {
+        ensure(Integer.MAX_VALUE - 1);
+        complete = true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 游标
+
+    /**
+     * 查看下一个 token 的类型，不移动游标
+     */
+    public TokenType peekType() throws TokenizeError {
+        ensure(cursor);
+        return type(cursor);
+    }
+
+    /**
+     * 前进一个 token，返回它的下标；停在 EOF 上不再前进
+     */
+    public int next() throws TokenizeError {
+        ensure(cursor);
+        int index = Math.min(cursor, size - 1);
+        if (types[index] != TokenType.EOF.ordinal()) {
+            cursor++;
+        }
+        return index;
+    }
+
+    /**
+     * 下一个 token 的下标，不移动游标
+     */
+    public int peekIndex() throws TokenizeError {
+        ensure(cursor);
+        return Math.min(cursor, size - 1);
+    }
+
+    // 按下标读取，EOF 之后的下标都视为 EOF
+
+    public TokenType type(int i) {
+        return TYPES[types[Math.min(i, size - 1)]];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    public long value(int i) {
+        return values[i];
+    }
+
+    /**
+     * IDENT、STRING_LITERAL 在 SymbolPool 里的编号
+     */
+    public int name(int i) {
+        return (int) values[i];
+    }
+
+    public SymbolPool getPool() {
+        return pool;
+    }
+
+    /**
+     * IDENT、STRING_LITERAL 的原文，关键字返回关键字本身
+     */
+    public String text(int i) {
+        TokenType type = type(i);
+        if (type == TokenType.IDENT || type == TokenType.STRING_LITERAL) {
+            return pool.name((int) values[i]);
+        }
+        return Keywords.wordOf(type);
+    }
+
+    public StringIter getSource() {
+        return source;
+    }
+
+    /**
+     * 生成下标 i 处的 Token 对象，只在需要 Token 的地方（全局表、报错）使用
+     */
+    public Token token(int i) {
+        TokenType type = type(i);
+        String text = type == TokenType.IDENT || type == TokenType.STRING_LITERAL ? pool.name((int) values[i]) : null;
+        return new Token(type, Tokenizer.valueOf(type, values[i], text), source, starts[i], starts[i] + lengths[i]);
+    }
+}
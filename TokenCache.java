@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * token 流的二进制缓存，放在源文件旁边（xxx.c0.tok）
+ * 文件头记录源文件内容的 SHA-256，源文件没变时直接读出 token 流，跳过分词。
+ * 只缓存分词成功的文件
+ *
+ * 格式：
+ * magic u32, version u32, hash [32]u8, 之后全部是无符号变长整数（每字节 7 位，低位在前）：
+ * 名字个数, 每个名字 [UTF-8 字节数, 字节],
+ * token 个数, 每个 token [type, 和上一个 token 结尾的距离, 长度, 值（只有字面量和标识符有）]
+ */
+public class TokenCache {
+    private static final int MAGIC = 0x746f6b30;
+    private static final int VERSION = 1;
+
+    private TokenCache() {
+    }
+
+    public static Path pathOf(String sourceFileName) {
+        return Paths.get(sourceFileName + ".tok");
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @return 缓存不存在、已经过期或者损坏时返回 null
+     */
+    public static TokenBuffer load(MappedStringIter source, Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            Reader in = new Reader(Files.readAllBytes(path));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (!Arrays.equals(in.readBytes(32), source.contentHash())) {
+                return null;
+            }
+
+            TokenBuffer tokens = new TokenBuffer(new Tokenizer(source));
+            SymbolPool pool = tokens.getPool();
+            int names = (int) in.readVar();
+            for (int id = 0; id < names; id++) {
+                String name = new String(in.readBytes((int) in.readVar()), StandardCharsets.UTF_8);
+                // 池是空的，按顺序驻留得到的编号就是原来的编号
+                if (pool.intern(name) != id) {
+                    return null;
+                }
+            }
+
+            TokenType[] types = TokenType.values();
+            int count = (int) in.readVar();
+            int end = 0;
+            for (int i = 0; i < count; i++) {
+                TokenType type = types[(int) in.readVar()];
+                int start = end + (int) in.readVar();
+                int length = (int) in.readVar();
+                long value = hasValue(type) ? in.readVar() : 0;
+                tokens.add(type, start, length, value);
+                end = start + length;
+            }
+            if (count == 0 || tokens.type(count - 1) != TokenType.EOF) {
+                return null;
+            }
+            tokens.complete(null);
+            return tokens;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存，tokens 必须已经读到 EOF。写不进去就算了，下次重新分词
+     */
+    public static void store(MappedStringIter source, TokenBuffer tokens, Path path) {
+        Writer out = new Writer();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeBytes(source.contentHash());
+
+        SymbolPool pool = tokens.getPool();
+        out.writeVar(pool.size());
+        for (int id = 0; id < pool.size(); id++) {
+            byte[] name = pool.name(id).getBytes(StandardCharsets.UTF_8);
+            out.writeVar(name.length);
+            out.writeBytes(name);
+        }
+
+        out.writeVar(tokens.size());
+        int end = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenType type = tokens.type(i);
+            out.writeVar(type.ordinal());
+            out.writeVar(tokens.start(i) - end);
+            out.writeVar(tokens.length(i));
+            if (hasValue(type)) {
+                out.writeVar(tokens.value(i));
+            }
+            end = tokens.start(i) + tokens.length(i);
+        }
+
+        try {
+            Files.write(path, out.toByteArray());
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static boolean hasValue(TokenType type) {
+        return type == TokenType.UINT_LITERAL || type == TokenType.IDENT || type == TokenType.STRING_LITERAL;
+    }
+
+    private static class Writer {
+        private byte[] bytes = new byte[1 << 16];
+        private int size = 0;
+
+        private void put(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void writeInt(int x) {
+            put(x >>> 24);
+            put(x >>> 16);
+            put(x >>> 8);
+            put(x);
+        }
+
+        void writeBytes(byte[] b) {
+            for (byte x : b) {
+                put(x);
+            }
+        }
+
+        void writeVar(long x) {
+            while ((x & ~0x7fL) != 0) {
+                put((int) (x & 0x7f) | 0x80);
+                x >>>= 7;
+            }
+            put((int) x);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int ptr = 0;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readInt() {
+            int x = 0;
+            for (int k = 0; k < 4; k++) {
+                x = (x << 8) | (bytes[ptr++] & 0xff);
+            }
+            return x;
+        }
+
+        byte[] readBytes(int n) {
+            if (ptr + n > bytes.length) {
+                throw new IndexOutOfBoundsException("truncated cache");
+            }
+            byte[] b = Arrays.copyOfRange(bytes, ptr, ptr + n);
+            ptr += n;
+            return b;
+        }
+
+        long readVar() {
+            long x = 0;
+            int shift = 0;
+            while (true) {
+                int b = bytes[ptr++];
+                x |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return x;
+                }
+                shift += 7;
+            }
+        }
+    }
+}
@@ -7,6 +7,17 @@ public class TokenizeError extends CompileError {
     private ErrorCode err;
     private Pos pos;
 
+    // 只记录出错的偏移，行列等到 getPos() 时再换算
+    private StringIter source;
+    private int offset;
+
+    public TokenizeError(ErrorCode err, StringIter source, int offset) {
+        super();
+        this.err = err;
+        this.source = source;
+        this.offset = offset;
+    }
+
     public TokenizeError(ErrorCode err, Pos pos) {
         super();
         this.err = err;
@@ -24,11 +35,14 @@ public class TokenizeError extends CompileError {
     }
 
     public Pos getPos() {
+        if (pos == null && source != null) {
+            pos = source.posOf(offset);
+        }
         return pos;
     }
 
     @Override
     public String toString() {
-        return new StringBuilder().append("Tokenize Error: ").append(err).append(", at: ").append(pos).toString();
+        return new StringBuilder().append("Tokenize Error: ").append(err).append(", at: ").append(getPos()).toString();
     }
 }
@@ -1,223 +1,202 @@
 
-
 public class Tokenizer {
 
     private StringIter it;
 
+    // 标识符和字符串的原文都驻留在这里，Table 也用同一个池里的编号
+    private final SymbolPool pool;
+
+    // 标识符的字符先放在这里，只有第一次出现的 IDENT 才会生成新的 String
+    private final StringBuilder ident = new StringBuilder();
+
+    // 最近一次 lex() 读到的 token
+    private int startOffset;
+    private int endOffset;
+    // UINT_LITERAL 的值
+    private long number;
+    // IDENT、STRING_LITERAL 的原文在池里的编号
+    private int name;
+
     public Tokenizer(StringIter it) {
+        this(it, new SymbolPool());
+    }
+
+    public Tokenizer(StringIter it, SymbolPool pool) {
         this.it = it;
+        this.pool = pool;
+    }
+
+    public StringIter getIter() {
+        return it;
+    }
+
+    public SymbolPool getPool() {
+        return pool;
     }
 
     // 这里本来是想实现 Iterator<Token> 的，但是 Iterator 不允许抛异常，于是就这样了
     /**
      * 获取下一个 Token
-     * 
+     *
      * @return
      * @throws TokenizeError 如果解析有异常则抛出
      */
     public Token nextToken() throws TokenizeError {
-        it.readAll();
-
-        // 跳过之前的所有空白字符
-        skipSpaceCharacters();
-
-        if (it.isEOF()) {
-            return new Token(TokenType.EOF, "", it.currentPos(), it.currentPos());
-        }
-
-        char peek = it.peekChar();
-        if (Character.isDigit(peek)) {
-            return lexUInt();
-        } else if (Character.isAlphabetic(peek) || peek == '_') {
-            return lexIdentOrKeyword();
-        }else if(peek == '\"'){
-            return lexSTRING_LITERAL();
-        } else {
-            return lexOperatorOrUnknown();
-        }
+        TokenType type = lex();
+        String text = type == TokenType.IDENT || type == TokenType.STRING_LITERAL ? pool.name(name) : null;
+        return new Token(type, valueOf(type, number, text), it, startOffset, endOffset);
     }
 
-    private Token lexUInt() throws TokenizeError {
-        if(!Character.isDigit(it.peekChar())){
-            throw new Error("Not implemented");
+    /**
+     * 读取下一个 token，直接追加到 buffer 末尾，不创建 Token 对象
+     *
+     * @throws TokenizeError 如果解析有异常则抛出
+     */
+    public void nextInto(TokenBuffer buffer) throws TokenizeError {
+        TokenType type = lex();
+        long value = 0;
+        if (type == TokenType.UINT_LITERAL) {
+            value = number;
+        } else if (type == TokenType.IDENT || type == TokenType.STRING_LITERAL) {
+            value = name;
         }
+        buffer.add(type, startOffset, endOffset - startOffset, value);
+    }
 
-        Long value=(long)0;
-        Pos startPos = it.currentPos();
-        while(Character.isDigit(it.peekChar())){
-            value=value*(long)10+Long.parseLong(String.valueOf(it.nextChar()));
+    /**
+     * 根据 token 的类型还原出 Token 的 value
+     * 关键字和符号的 value 都是固定的，只有字面量和标识符需要单独存
+     */
+    public static Object valueOf(TokenType type, long number, String text) {
+        switch (type) {
+            case UINT_LITERAL:
+                return number;
+            case IDENT:
+            case STRING_LITERAL:
+                return text;
+            case PLUS:
+                return '+';
+            case MINUS:
+                return '-';
+            case MUL:
+                return '*';
+            case DIV:
+                return '/';
+            case ASSIGN:
+                return '=';
+            case EQ:
+                return "==";
+            case NEQ:
+                return "!=";
+            case LT:
+                return '<';
+            case GT:
+                return '>';
+            case LE:
+                return "<=";
+            case GE:
+                return ">=";
+            case ARROW:
+                return "->";
+            case COMMA:
+                return ':';
+            case COLON:
+                return ':';
+            case SEMICOLON:
+                return ';';
+            case L_PAREN:
+                return '(';
+            case R_PAREN:
+                return ')';
+            case L_BRACE:
+                return '{';
+            case R_BRACE:
+                return '}';
+            case EOF:
+                return "";
+            default:
+                return Keywords.wordOf(type);
         }
-        Pos endPos = it.currentPos();
-        TokenType tokentype = TokenType.UINT_LITERAL;
-
-        Token intToken = new Token(tokentype, value, startPos, endPos);
-        // System.out.println(intToken);
-        return intToken;
-
-        // 请填空：
-        // 直到查看下一个字符不是数字为止:
-        // -- 前进一个字符，并存储这个字符
-        //
-        // 解析存储的字符串为无符号整数
-        // 解析成功则返回无符号整数类型的token，否则返回编译错误
-        //
-        // Token 的 Value 应填写数字的值
-        
     }
 
-    private TokenType stringFindType(String s){
-        if(s.contentEquals("fn")) return TokenType.FN_KW;
-        if(s.contentEquals("let")) return TokenType.LET_KW;
-        if(s.contentEquals("const")) return TokenType.CONST_KW;
-        if(s.contentEquals("as")) return TokenType.AS_KW;
-        if(s.contentEquals("while")) return TokenType.WHILE_KW;
-        if(s.contentEquals("if")) return TokenType.IF_KW;
-        if(s.contentEquals("else")) return TokenType.ELSE_KW;
-        if(s.contentEquals("return")) return TokenType.RETURN_KW;
-        // if(s.contentEquals("break")) return TokenType.BREAK_KW;
-        // if(s.contentEquals("continue")) return TokenType.CONTINUE_KW;
-        if(s.contentEquals("int")) return TokenType.INT_KW;
-        if(s.contentEquals("void")) return TokenType.VOID_KW;
-        return TokenType.IDENT;
-    }
+    /**
+     * 读取下一个 token，起止偏移和值记在字段里
+     * 按 LexerTables 的转移表一直走到没有转移为止，停下的状态决定 token 的类型
+     *
+     * @return token 的类型
+     */
+    private TokenType lex() throws TokenizeError {
+        it.readAll();
 
-    private Token lexIdentOrKeyword() throws TokenizeError {
-        if(!(Character.isDigit(it.peekChar()) || Character.isAlphabetic(it.peekChar()) || it.peekChar() == '_')){
-            throw new Error("Not implemented");
+        // 跳过之前的所有空白字符
+        int cls = classOf();
+        while (cls == LexerTables.SPACE) {
+            it.nextChar();
+            cls = classOf();
         }
 
-        String value = "";
-        Pos startPos = it.currentPos();
-        while(Character.isDigit(it.peekChar()) || Character.isAlphabetic(it.peekChar()) || it.peekChar() == '_'){
-            value = value + it.nextChar();
+        startOffset = it.currentOffset();
+        if (cls == LexerTables.EOF) {
+            endOffset = startOffset;
+            return TokenType.EOF;
         }
-        Pos endPos = it.currentPos();
-        TokenType tokentype = stringFindType(value);
-
-        Token intToken = new Token(tokentype, value, startPos, endPos);
-        // System.out.println(intToken);
-        return intToken;
-        // 请填空：
-        // 直到查看下一个字符不是数字或字母为止:
-        // -- 前进一个字符，并存储这个字符
-        //
-        // 尝试将存储的字符串解释为关键字
-        // -- 如果是关键字，则返回关键字类型的 token
-        // -- 否则，返回标识符
-        //
-        // Token 的 Value 应填写标识符或关键字的字符串
-    }
 
-    private Token lexSTRING_LITERAL() throws TokenizeError {
-        Pos startPos = it.currentPos();
-        String value = "";
-        StringBuffer temp = new StringBuffer("\"");
-        char ch = it.nextChar();
-        while(it.peekChar()!='\"'){
-            ch = it.nextChar();
-            temp.append(ch);
-            if(ch == '\\'){
-                ch = it.nextChar();
-                switch(ch) {
-                    case '\\':
-                    case '\"':
-                    case '\'':
-                    case 'n':
-                    case 'r':
-                    case 't':
-                        temp.append(ch);
-                        break;
-                    default:
-                        throw new TokenizeError(ErrorCode.InvalidInput, it.previousPos());
-                }
+        int state = LexerTables.START;
+        long value = 0;
+        ident.setLength(0);
+        while (true) {
+            int next = LexerTables.NEXT[state * LexerTables.CLASSES + cls];
+            if (next == LexerTables.DEAD) {
+                break;
             }
+            char ch = it.nextChar();
+            switch (LexerTables.KEEP[next]) {
+                case LexerTables.KEEP_DIGIT:
+                    value = value * 10 + (ch < 128 ? ch - '0' : Character.digit(ch, 10));
+                    break;
+                case LexerTables.KEEP_CHAR:
+                    ident.append(ch);
+                    break;
+                default:
+                    break;
+            }
+            state = next;
+            cls = classOf();
         }
-        temp.append(it.nextChar());
-        Pos endPos = it.currentPos();
-        value = new String(temp);
-        Token token = new Token(TokenType.STRING_LITERAL, value, startPos, endPos);
-        // System.out.println(token);
-        return token;
 
-    }
-
-    private Token lexOperatorOrUnknown() throws TokenizeError {
-        Pos startPos = it.currentPos();
-        // System.out.println(it.peekChar());
-        switch (it.nextChar()) {
-            case '+':
-                return new Token(TokenType.PLUS, '+', startPos, it.currentPos());
-
-            case '-':
-                if(it.peekChar() == '>'){
-                    // System.out.println(it.peekChar());
-                    it.nextChar();
-                    return new Token(TokenType.ARROW, "->", startPos, it.currentPos());
-                } else {
-                    return new Token(TokenType.MINUS, '-', startPos, it.currentPos());
-                }
-            case '*':
-                return new Token(TokenType.MUL, '*', startPos, it.currentPos());
-            case '/':
-                return new Token(TokenType.DIV, '/', startPos, it.currentPos());
-            case '=':
-                if(it.peekChar() == '='){
-                    // System.out.println(it.peekChar());
-                    it.nextChar();
-                    return new Token(TokenType.EQ, "==", startPos, it.currentPos());
-                } else {
-                    return new Token(TokenType.ASSIGN, '=', startPos, it.currentPos());
-                }
-            case '!':
-                if(it.peekChar() != '='){
-                    // System.out.println(it.peekChar());
-                    throw new TokenizeError(ErrorCode.InvalidInput, it.previousPos());
-                }
-                it.nextChar();
-                return new Token(TokenType.NEQ, "!=", startPos, it.currentPos());
-            case '<':
-                if(it.peekChar() == '='){
-                    // System.out.println(it.peekChar());
-                    it.nextChar();
-                    return new Token(TokenType.LE, "<=", startPos, it.currentPos());
-                } else {
-                    return new Token(TokenType.LT, '<', startPos, it.currentPos());
-                }
-            case '>':
-                if(it.peekChar() == '='){
-                    // System.out.println(it.peekChar());
-                    it.nextChar();
-                    return new Token(TokenType.GE, ">=", startPos, it.currentPos());
-                } else {
-                    return new Token(TokenType.GT, '>', startPos, it.currentPos());
-                }
-            case ',':
-                return new Token(TokenType.COMMA, ':', startPos, it.currentPos());
-            case ':':
-                return new Token(TokenType.COLON, ':', startPos, it.currentPos());
-            case ';':
-                return new Token(TokenType.SEMICOLON, ';', startPos, it.currentPos());
-            
-            case '(':
-                return new Token(TokenType.L_PAREN, '(', startPos, it.currentPos());
-            case ')':
-                return new Token(TokenType.R_PAREN, ')', startPos, it.currentPos());
-
-            case '{':
-                return new Token(TokenType.L_BRACE, '{', startPos, it.currentPos());
-            case '}':
-                return new Token(TokenType.R_BRACE, '}', startPos, it.currentPos());
-
-            default:
-                // 不认识这个输入，摸了
-                throw new TokenizeError(ErrorCode.InvalidInput, it.previousPos());
+        TokenType type = LexerTables.ACCEPT[state];
+        if (type == null) {
+            int offset = LexerTables.BLAME_NEXT[state] ? it.currentOffset() : it.previousOffset();
+            throw new TokenizeError(ErrorCode.InvalidInput, it, offset);
+        }
+        if (type == TokenType.UINT_LITERAL) {
+            number = value;
+        } else if (type == TokenType.IDENT) {
+            type = Keywords.lookup(ident);
+            if (type == TokenType.IDENT) {
+                name = pool.intern(ident);
+            }
+        } else if (type == TokenType.STRING_LITERAL) {
+            // 字符串的值是带引号和转义的原文
+            name = pool.intern(ident);
         }
+        endOffset = it.currentOffset();
+        return type;
     }
 
-    private void skipSpaceCharacters() {
-        while (!it.isEOF() && Character.isWhitespace(it.peekChar())) {
-            it.nextChar();
+    /**
+     * 下一个字符的类别，ASCII 直接查表
+     */
+    private int classOf() {
+        char ch = it.peekChar();
+        if (ch < 128) {
+            // 读到结尾时 peekChar 返回 0，只有这时才需要再判断一次
+            if (ch == 0 && it.isEOF()) {
+                return LexerTables.EOF;
+            }
+            return LexerTables.CLASS[ch];
         }
+        return LexerTables.slowClassOf(ch);
     }
-    
+
 }